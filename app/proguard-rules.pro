@@ -22,6 +22,10 @@
 -keep class com.google.gson.** { *; }
 -dontwarn com.google.gson.**
 
+# 保留 MessagePack 相关类（缓冲区实现通过反射按平台选择）
+-keep class org.msgpack.core.buffer.** { *; }
+-dontwarn org.msgpack.**
+
 # 保留 AndroidX 和 Support Library
 -keep class androidx.** { *; }
 -keep interface androidx.** { *; }
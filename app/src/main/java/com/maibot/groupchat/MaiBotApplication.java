@@ -1,32 +1,179 @@
 package com.maibot.groupchat;
 
 import android.app.Application;
+import android.content.pm.PackageManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.StrictMode;
 import android.util.Log;
 
+import com.chaquo.python.AndroidPlatform;
+import com.chaquo.python.PyObject;
+import com.chaquo.python.Python;
+import com.maibot.groupchat.network.HttpTransport;
+import com.maibot.groupchat.startup.StartupOrchestrator;
+import com.maibot.groupchat.startup.StartupTrace;
+import com.maibot.groupchat.utils.SecureConfigManager;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
 public class MaiBotApplication extends Application {
 
     private static final String TAG = "MaiBotApplication";
+    private static final int PREWARM_TIMEOUT_SECONDS = 5;
+
+    // 启动阶段
+    private static final String STAGE_KEYSTORE = "keystore";
+    private static final String STAGE_PYTHON = "python";
+    private static final String STAGE_MODULE = "module";
+    private static final String STAGE_WARM_CACHE = "warm_cache";
+    private static final String STAGE_CONFIG = "config";
+    private static final String STAGE_HTTP = "http";
+
     private static MaiBotApplication instance;
 
+    private final StartupOrchestrator startup = new StartupOrchestrator();
+    private final AtomicBoolean httpTransportTaken = new AtomicBoolean(false);
+
     @Override
     public void onCreate() {
+        StartupTrace trace = StartupTrace.getInstance();
+        trace.record(StartupTrace.PROCESS_START, Process.getStartElapsedRealtime(), SystemClock.elapsedRealtime());
+        trace.begin(StartupTrace.APPLICATION);
         super.onCreate();
         instance = this;
+        trace.init(this);
         Log.i(TAG, "MaiBotApplication initialized");
 
         // 初始化全局配置
         initializeStrictMode();
+
+        // 进程一启动就并行准备服务需要的资源，服务创建时直接取用
+        startStartupStages();
+        trace.end(StartupTrace.APPLICATION);
+    }
+
+    /**
+     * 启动阶段：Keystore、Python、HTTP传输层互不依赖，并行执行；
+     * 模块导入依赖Python，预热缓存和配置文件生成依赖模块，配置文件还依赖Keystore中的API密钥
+     */
+    private void startStartupStages() {
+        startup.stage(STAGE_KEYSTORE, () -> new SecureConfigManager(this))
+                .stage(STAGE_PYTHON, () -> {
+                    if (!Python.isStarted()) {
+                        Python.start(new AndroidPlatform(this));
+                    }
+                    return Python.getInstance();
+                })
+                .stage(STAGE_MODULE, () -> startup.<Python>await(STAGE_PYTHON).getModule("maibot_android"),
+                        STAGE_PYTHON)
+                .stage(STAGE_WARM_CACHE, this::prepareWarmCache, STAGE_MODULE)
+                .stage(STAGE_CONFIG, this::materializeConfig, STAGE_MODULE, STAGE_KEYSTORE)
+                .stage(STAGE_HTTP, this::prewarmHttpTransport, STAGE_KEYSTORE)
+                .start();
+    }
+
+    /**
+     * 启用Python预热缓存：字节码按应用版本缓存，覆盖安装后重新预编译
+     */
+    private Boolean prepareWarmCache() throws PackageManager.NameNotFoundException {
+        long lastUpdateTime = getPackageManager().getPackageInfo(getPackageName(), 0).lastUpdateTime;
+        String versionKey = BuildConfig.VERSION_CODE + "-" + lastUpdateTime;
+        PyObject module = startup.await(STAGE_MODULE);
+        return module.callAttr("prepare_warm_cache", versionKey).toBoolean();
+    }
+
+    /**
+     * 已配置时提前生成Python侧的配置文件
+     *
+     * @return 配置文件是否已按当前配置生成
+     */
+    private Boolean materializeConfig() {
+        SecureConfigManager configManager = startup.await(STAGE_KEYSTORE);
+        if (!configManager.isConfigured()) {
+            return false;
+        }
+        PyObject module = startup.await(STAGE_MODULE);
+        return module.callAttr("initialize_config", configManager.getApiProvider(),
+                configManager.getApiKey(), configManager.getBotInstances()).toBoolean();
+    }
+
+    /**
+     * 创建共享传输层；连接远程服务时顺便建立连接，首条消息不必再等TCP和TLS握手
+     */
+    private HttpTransport prewarmHttpTransport() {
+        HttpTransport transport = new HttpTransport(this);
+        SecureConfigManager configManager = startup.await(STAGE_KEYSTORE);
+        if (configManager.isConfigured() && !configManager.useDirectTransport() && !configManager.isLocalServer()) {
+            Request request = new Request.Builder()
+                    .url(configManager.getBaseUrl() + "/api/health")
+                    .build();
+            transport.newClient(PREWARM_TIMEOUT_SECONDS, false).newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    Log.d(TAG, "Connection prewarm failed: " + e.getMessage());
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                }
+            });
+        }
+        return transport;
+    }
+
+    /**
+     * Keystore 已初始化的配置管理器；启动阶段尚未完成时等待，失败时新建
+     */
+    public SecureConfigManager getSecureConfigManager() {
+        SecureConfigManager configManager = startup.await(STAGE_KEYSTORE);
+        return configManager != null ? configManager : new SecureConfigManager(this);
+    }
+
+    /**
+     * 等待 maibot_android 模块导入和预热缓存启用完成，应在后台线程调用；导入失败时返回 null
+     * 预热缓存必须在服务导入MaiBot模块之前启用，启用失败不影响使用
+     */
+    public PyObject awaitPythonModule() {
+        startup.await(STAGE_WARM_CACHE);
+        return startup.await(STAGE_MODULE);
+    }
+
+    /**
+     * 等待配置文件生成阶段结束，应在后台线程调用
+     *
+     * @return 配置文件是否已按当前配置生成，是则可以直接启动服务
+     */
+    public boolean awaitConfigMaterialized() {
+        return Boolean.TRUE.equals(startup.await(STAGE_CONFIG));
+    }
+
+    /**
+     * 取走预热的传输层，只能取一次，之后返回 null，调用方自行创建
+     */
+    public HttpTransport takeHttpTransport() {
+        if (httpTransportTaken.getAndSet(true)) {
+            return null;
+        }
+        return startup.await(STAGE_HTTP);
     }
 
     private void initializeStrictMode() {
-        // 开发环境可以启用StrictMode检测主线程操作
-        // 生产环境建议关闭
-        /*
+        // 调试版启用StrictMode检测主线程操作，生产环境关闭
+        // 服务在每次调用Python前调用 StrictMode.noteSlowCall，主线程上的Python调用按自定义慢调用记录
         if (BuildConfig.DEBUG) {
             StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
                     .detectDiskReads()
                     .detectDiskWrites()
                     .detectNetwork()
+                    .detectCustomSlowCalls()
                     .penaltyLog()
                     .build());
             StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
@@ -35,7 +182,6 @@ public class MaiBotApplication extends Application {
                     .penaltyLog()
                     .build());
         }
-        */
     }
 
     public static MaiBotApplication getInstance() {
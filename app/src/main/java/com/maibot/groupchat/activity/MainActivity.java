@@ -4,11 +4,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.os.Bundle;
 import android.os.IBinder;
@@ -16,6 +13,7 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
 import android.widget.EditText;
@@ -28,21 +26,32 @@ import com.maibot.groupchat.R;
 import com.maibot.groupchat.adapter.ChatAdapter;
 import com.maibot.groupchat.model.Message;
 import com.maibot.groupchat.service.MaiBotService;
+import com.maibot.groupchat.service.ReplyBus;
+import com.maibot.groupchat.service.ReplyEvent;
+import com.maibot.groupchat.startup.StartupTrace;
+import com.maibot.groupchat.storage.MessageStore;
+import com.maibot.groupchat.storage.PagedMessageList;
 import com.maibot.groupchat.utils.ConfigManager;
 
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "MainActivity";
-    private static final String ACTION_BOT_REPLY = "com.maibot.groupchat.BOT_REPLY";
-    private static final String EXTRA_SENDER = "sender";
-    private static final String EXTRA_MESSAGE = "message";
+    private static final String CONVERSATION_ID = "default";
 
     private RecyclerView recyclerView;
     private ChatAdapter chatAdapter;
-    private List<Message> messageList;
+    // 聊天记录按页从存储读取，内存中只保留最近访问的几页
+    private PagedMessageList messageList;
+    // 正在流式输出的机器人气泡，按发送者索引
+    private final Map<String, StreamingReply> streamingReplies = new HashMap<>();
+    private final ReplyUpdateBatcher replyBatcher = new ReplyUpdateBatcher(this::applyReplies);
     private EditText messageInput;
     private FloatingActionButton sendButton;
     private MaterialToolbar toolbar;
@@ -67,40 +76,88 @@ public class MainActivity extends AppCompatActivity {
         }
     };
 
-    private BroadcastReceiver botReplyReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (ACTION_BOT_REPLY.equals(intent.getAction())) {
-                String sender = intent.getStringExtra(EXTRA_SENDER);
-                String messageText = intent.getStringExtra(EXTRA_MESSAGE);
-                if (sender != null && messageText != null) {
-                    // 移除加载状态消息
-                    for (int i = messageList.size() - 1; i >= 0; i--) {
-                        if (messageList.get(i).getType() == Message.TYPE_LOADING) {
-                            messageList.remove(i);
-                            chatAdapter.notifyItemRemoved(i);
-                            break;
-                        }
-                    }
-                    // 添加机器人消息
-                    Message botMessage = new Message(Message.TYPE_BOT, sender, messageText, System.currentTimeMillis());
-                    messageList.add(botMessage);
-                    chatAdapter.notifyItemInserted(messageList.size() - 1);
-                    recyclerView.scrollToPosition(messageList.size() - 1);
-                    
-                    // 重新启用发送按钮
-                    sendButton.setEnabled(true);
-                    sendButton.setAlpha(1.0f);
-                    
-                    // 隐藏空状态
-                    updateEmptyState();
+    /**
+     * 一次应用同一帧内到达的所有回复：先更新流式气泡，新气泡作为一个区间插入在加载占位之前，
+     * 再移除对应数量的加载占位，最后只滚动一次
+     */
+    private void applyReplies(List<ReplyEvent> events) {
+        int firstInserted = messageList.getMessageCount();
+        int loadingBefore = messageList.getLoadingCount();
+        Set<Integer> changedPositions = new HashSet<>();
+
+        for (ReplyEvent event : events) {
+            if (event.type == ReplyEvent.TYPE_SKIPPED) {
+                // 这条消息不会得到回复，移除为它添加的加载占位
+                messageList.removeLoading();
+                continue;
+            }
+            if (event.sender == null || event.text == null) {
+                continue;
+            }
+            // 同一任务已有流式气泡时只更新正文；中间结果只留在内存中，结束时才持久化
+            StreamingReply streaming = streamingReplies.get(event.sender);
+            if (streaming != null && streaming.taskId == event.taskId) {
+                if (event.isPartial()) {
+                    streaming.text = event.text;
+                    messageList.updateUnsavedContent(streaming.position, event.text);
+                } else {
+                    messageList.updateContent(streaming.position, event.text);
+                    streamingReplies.remove(event.sender);
                 }
+                changedPositions.add(streaming.position);
+                continue;
+            }
+            if (streaming != null) {
+                // 之前的回复已被新任务取代，旧气泡保留并保存已输出的内容，新回复写入新气泡
+                streamingReplies.remove(event.sender);
+                messageList.updateContent(streaming.position, streaming.text);
+            }
+
+            // 移除一个加载状态，添加机器人消息
+            messageList.removeLoading();
+            Message botMessage = new Message(Message.TYPE_BOT, event.sender, event.text, System.currentTimeMillis());
+            int position = messageList.append(botMessage);
+            if (event.isPartial()) {
+                streamingReplies.put(event.sender, new StreamingReply(event.taskId, position, event.text));
             }
         }
-    };
+
+        int lastPosition = messageList.size() - 1;
+        boolean scroll = false;
+        for (int position : changedPositions) {
+            // 本帧新插入的气泡随插入一起绘制
+            if (position < firstInserted) {
+                chatAdapter.notifyItemChanged(position, ChatAdapter.PAYLOAD_CONTENT);
+                scroll |= position == lastPosition;
+            }
+        }
+        int insertedCount = messageList.getMessageCount() - firstInserted;
+        if (insertedCount > 0) {
+            chatAdapter.notifyItemRangeInserted(firstInserted, insertedCount);
+            scroll = true;
+        }
+        int removedCount = loadingBefore - messageList.getLoadingCount();
+        if (removedCount > 0) {
+            chatAdapter.notifyItemRangeRemoved(messageList.size(), removedCount);
+        }
+        if (insertedCount > 0 || removedCount > 0) {
+            // 重新启用发送按钮
+            sendButton.setEnabled(true);
+            sendButton.setAlpha(1.0f);
+
+            // 隐藏空状态（已隐藏时跳过）
+            if (emptyState.getVisibility() != View.GONE) {
+                updateEmptyState();
+            }
+        }
+        if (scroll) {
+            recyclerView.scrollToPosition(messageList.size() - 1);
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.getInstance().begin(StartupTrace.ACTIVITY_FIRST_FRAME);
         super.onCreate(savedInstanceState);
         
         // 检查是否已配置
@@ -125,9 +182,34 @@ public class MainActivity extends AppCompatActivity {
         // 设置发送按钮
         setupSendButton();
 
-        // 注册广播接收器
-        IntentFilter filter = new IntentFilter(ACTION_BOT_REPLY);
-        registerReceiver(botReplyReceiver, filter);
+        // 第一帧绘制前结束启动追踪中的界面区间
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupTrace.getInstance().end(StartupTrace.ACTIVITY_FIRST_FRAME);
+                return true;
+            }
+        });
+
+        // 读取聊天记录，读到后再订阅机器人回复，Activity 销毁时自动取消订阅
+        messageList.open(new PagedMessageList.Listener() {
+            @Override
+            public void onOpened() {
+                chatAdapter.notifyDataSetChanged();
+                if (!messageList.isEmpty()) {
+                    recyclerView.scrollToPosition(messageList.size() - 1);
+                }
+                updateEmptyState();
+                ReplyBus.getInstance().subscribe(MainActivity.this, replyBatcher::add);
+            }
+
+            @Override
+            public void onRangeLoaded(int start, int count) {
+                chatAdapter.notifyItemRangeChanged(start, count);
+            }
+        });
 
         // 启动MaiBot服务
         startService(new Intent(this, MaiBotService.class));
@@ -152,7 +234,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setupRecyclerView() {
-        messageList = new ArrayList<>();
+        messageList = new PagedMessageList(MessageStore.getInstance(this), CONVERSATION_ID);
         chatAdapter = new ChatAdapter(this, messageList);
 
         LinearLayoutManager layoutManager = new LinearLayoutManager(this);
@@ -214,28 +296,29 @@ public class MainActivity extends AppCompatActivity {
             String apiKey = configManager.getApiKey();
             int instanceCount = configManager.getBotInstances();
             
-            boolean success = maiBotService.initializeConfig(apiProvider, apiKey, instanceCount);
-            if (success) {
-                Toast.makeText(this, "MaiBot服务已启动", Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, "MaiBot服务启动失败", Toast.LENGTH_SHORT).show();
-            }
+            maiBotService.initializeConfig(apiProvider, apiKey, instanceCount, success -> {
+                if (isDestroyed()) {
+                    return;
+                }
+                if (success) {
+                    Toast.makeText(this, "MaiBot服务已启动", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(this, "MaiBot服务启动失败", Toast.LENGTH_SHORT).show();
+                }
+            });
         }
     }
 
     private void sendMessage() {
         String messageText = messageInput.getText().toString().trim();
-        if (!messageText.isEmpty()) {
-            // 添加用户消息
+        // 聊天记录读取完成前不接受新消息，否则位置会错乱
+        if (!messageText.isEmpty() && messageList.isOpened()) {
+            // 添加用户消息，插入在加载状态之前
             Message userMessage = new Message(Message.TYPE_USER, "我", messageText, System.currentTimeMillis());
-            messageList.add(userMessage);
-            chatAdapter.notifyItemInserted(messageList.size() - 1);
-            recyclerView.scrollToPosition(messageList.size() - 1);
+            chatAdapter.notifyItemInserted(messageList.append(userMessage));
 
             // 添加加载状态消息
-            Message loadingMessage = new Message(Message.TYPE_LOADING, "", "加载中...", System.currentTimeMillis());
-            messageList.add(loadingMessage);
-            chatAdapter.notifyItemInserted(messageList.size() - 1);
+            chatAdapter.notifyItemInserted(messageList.addLoading());
             recyclerView.scrollToPosition(messageList.size() - 1);
 
             // 清空输入框
@@ -248,12 +331,14 @@ public class MainActivity extends AppCompatActivity {
             // 隐藏空状态
             updateEmptyState();
 
-            // 发送消息到MaiBot服务
+            // 发送消息到MaiBot服务，服务未就绪时由发件箱暂存
+            String messageId = UUID.randomUUID().toString();
             if (isServiceBound && maiBotService != null) {
-                maiBotService.sendMessageToBots(messageText);
+                maiBotService.sendMessageToBots(messageId, messageText);
             } else {
                 Intent intent = new Intent(this, MaiBotService.class);
-                intent.putExtra("message", messageText);
+                intent.putExtra(MaiBotService.EXTRA_MESSAGE, messageText);
+                intent.putExtra(MaiBotService.EXTRA_MESSAGE_ID, messageId);
                 startService(intent);
             }
         }
@@ -280,13 +365,13 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        // 注销广播接收器（添加异常处理）
-        try {
-            unregisterReceiver(botReplyReceiver);
-        } catch (IllegalArgumentException e) {
-            // 接收器未注册或已被注销
-            Log.d(TAG, "BroadcastReceiver was not registered");
+        replyBatcher.cancel();
+        // 未结束的流式回复保存已输出的内容
+        for (StreamingReply streaming : streamingReplies.values()) {
+            messageList.updateContent(streaming.position, streaming.text);
         }
+        streamingReplies.clear();
+        messageList.close();
         // 解绑服务
         if (isServiceBound) {
             try {
@@ -300,4 +385,17 @@ public class MainActivity extends AppCompatActivity {
         // 停止MaiBot服务
         stopService(new Intent(this, MaiBotService.class));
     }
+
+    private static final class StreamingReply {
+        final long taskId;
+        final int position;
+        // 最近一次中间结果，尚未持久化
+        String text;
+
+        StreamingReply(long taskId, int position, String text) {
+            this.taskId = taskId;
+            this.position = position;
+            this.text = text;
+        }
+    }
 }
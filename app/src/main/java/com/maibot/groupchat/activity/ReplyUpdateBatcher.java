@@ -0,0 +1,52 @@
+package com.maibot.groupchat.activity;
+
+import android.view.Choreographer;
+
+import com.maibot.groupchat.service.ReplyEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 界面更新合并器 - 同一帧内到达的回复事件攒在一起，在下一帧开始时一次性应用，
+ * 多个机器人同时回复时列表只做一次布局
+ * 只在主线程使用
+ */
+final class ReplyUpdateBatcher implements Choreographer.FrameCallback {
+
+    interface Applier {
+        void apply(List<ReplyEvent> events);
+    }
+
+    private final Applier applier;
+    private List<ReplyEvent> pending = new ArrayList<>();
+    private boolean scheduled;
+
+    ReplyUpdateBatcher(Applier applier) {
+        this.applier = applier;
+    }
+
+    void add(ReplyEvent event) {
+        pending.add(event);
+        if (!scheduled) {
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        List<ReplyEvent> events = pending;
+        pending = new ArrayList<>();
+        applier.apply(events);
+    }
+
+    void cancel() {
+        if (scheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            scheduled = false;
+        }
+        pending.clear();
+    }
+}
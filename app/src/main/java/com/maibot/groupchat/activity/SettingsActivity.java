@@ -2,6 +2,7 @@ package com.maibot.groupchat.activity;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
@@ -149,14 +150,17 @@ public class SettingsActivity extends AppCompatActivity {
                 MaiBotService.LocalBinder binder = (MaiBotService.LocalBinder) service;
                 MaiBotService maiBotService = binder.getService();
                 
-                // 初始化配置
-                boolean success = maiBotService.initializeConfig(apiProvider, apiKey, instanceCount);
-                if (success) {
-                    Toast.makeText(SettingsActivity.this, "MaiBot服务启动成功", Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(SettingsActivity.this, "MaiBot服务启动失败", Toast.LENGTH_SHORT).show();
-                }
+                // 初始化配置，结果返回时本页面通常已关闭，提示使用应用上下文
+                Context appContext = getApplicationContext();
+                maiBotService.initializeConfig(apiProvider, apiKey, instanceCount, success -> {
+                    if (success) {
+                        Toast.makeText(appContext, "MaiBot服务启动成功", Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(appContext, "MaiBot服务启动失败", Toast.LENGTH_SHORT).show();
+                    }
+                });
                 
+                // 服务已通过startService启动，解绑不影响后台初始化
                 unbindService(this);
             }
 
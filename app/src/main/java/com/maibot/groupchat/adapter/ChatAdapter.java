@@ -25,6 +25,9 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private static final int VIEW_TYPE_BOT = 1;
     private static final int VIEW_TYPE_LOADING = 2;
 
+    // 局部刷新载荷：流式回复只更新气泡正文
+    public static final String PAYLOAD_CONTENT = "content";
+
     private Context context;
     private List<Message> messageList;
     private SimpleDateFormat dateFormat;
@@ -78,6 +81,16 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         setAnimation(holder.itemView, position);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        // 流式更新只刷新正文，不重新绑定整行也不重复播放动画
+        if (payloads.contains(PAYLOAD_CONTENT) && holder instanceof BotMessageViewHolder) {
+            ((BotMessageViewHolder) holder).messageText.setText(messageList.get(position).getContent());
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
     @Override
     public void onViewDetachedFromWindow(@NonNull RecyclerView.ViewHolder holder) {
         super.onViewDetachedFromWindow(holder);
@@ -1,40 +1,61 @@
 package com.maibot.groupchat.network;
 
 import android.content.Context;
+import android.os.CancellationSignal;
 import android.util.Log;
 
 import com.maibot.groupchat.utils.ConfigManager;
 
-import okhttp3.MediaType;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
-public class ApiClient {
+public class ApiClient implements ChatTransport {
 
     private static final String TAG = "ApiClient";
-    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-    private static final int TIMEOUT_SECONDS = 30;
+    public static final int DEFAULT_TIMEOUT_SECONDS = 30;
+
+    // 对冲请求：回复超过最近延迟的该分位数仍未返回时，再发一个相同请求，取先成功的结果
+    private static final int HEDGE_PERCENTILE = 95;
+    private static final long MIN_HEDGE_DELAY_MS = 500;
+
+    private static final String CIRCUIT_OPEN_REPLY = "服务暂时不可用，请稍后重试";
 
     private OkHttpClient client;
     private ConfigManager configManager;
+    private final HttpTransport transport;
+    private final ClientStats stats = new ClientStats();
+    // 请求体编码格式：先用JSON，服务端以二进制格式应答后切换为二进制
+    private volatile ChatCodec requestCodec = JsonChatCodec.INSTANCE;
 
-    public ApiClient(Context context) {
-        this.client = new OkHttpClient.Builder()
-                .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                .build();
+    public ApiClient(Context context, HttpTransport transport) {
+        this(context, transport, DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    // 每个机器人只持有共享传输层的视图，连接池和调度线程由 HttpTransport 统一管理
+    public ApiClient(Context context, HttpTransport transport, int timeoutSeconds) {
         this.configManager = new ConfigManager(context);
+        this.transport = transport;
+        this.client = transport.newClient(timeoutSeconds, configManager.isLocalServer());
     }
 
     // 获取动态基础URL
@@ -42,108 +63,551 @@ public class ApiClient {
         return configManager.getBaseUrl();
     }
 
-    public String getReply(String message) {
-        // 构建API请求
-        String json = "{\"message\": \"" + escapeJson(message) + "\"}";
-        RequestBody body = RequestBody.create(json, JSON);
-        Request request = new Request.Builder()
-                .url(getBaseUrl() + "/api/chat")
-                .post(body)
-                .build();
+    private CircuitBreaker circuitBreaker() {
+        return transport.getCircuitBreaker(getBaseUrl());
+    }
 
-        try {
-            Response response = client.newCall(request).execute();
-            if (response.isSuccessful()) {
-                String responseBody = response.body().string();
-                // 解析JSON响应
-                try {
-                    JSONObject jsonResponse = new JSONObject(responseBody);
-                    return jsonResponse.getString("reply");
-                } catch (JSONException e) {
-                    Log.e(TAG, "解析响应失败", e);
-                    return "解析响应失败";
-                }
+    /**
+     * 异步获取单个回复：熔断器放行后才发请求，可安全重试的失败按退避时间在定时线程上重试
+     */
+    @Override
+    public CompletableFuture<String> getReplyAsync(String message, StreamListener listener, long timeoutMs,
+                                                   Executor executor) {
+        AsyncReply reply = new AsyncReply(executor);
+        if (listener != null) {
+            listener = reply.watchIdle(transport.getScheduler(), timeoutMs, listener);
+        } else {
+            reply.scheduleTimeout(transport.getScheduler(), timeoutMs);
+        }
+        sendReply(message, listener, reply, 0);
+        return reply.future;
+    }
+
+    /**
+     * 批量获取多个机器人的回复：一次请求，服务端只构建一次上下文
+     * 返回 机器人ID -> 回复文本，失败时每个机器人都得到同样的错误提示
+     */
+    @Override
+    public CompletableFuture<Map<String, String>> getBatchReplies(String message, List<String> botIds,
+                                                                 CancellationSignal signal) {
+        CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+        sendBatch(message, botIds, signal, future, 0);
+        return future;
+    }
+
+    /**
+     * 批量流式获取回复：所有机器人的帧复用同一个响应流，异步回调
+     */
+    @Override
+    public void streamBatchReplies(String message, List<String> botIds, BatchStreamListener listener,
+                                   CancellationSignal signal) {
+        sendBatchStream(message, botIds, listener, signal, 0);
+    }
+
+    private void sendReply(String message, StreamListener listener, AsyncReply reply, int retry) {
+        CircuitBreaker breaker = circuitBreaker();
+        if (!breaker.allowRequest()) {
+            Log.w(TAG, "Circuit open, rejecting request to " + breaker.getEndpoint());
+            reply.complete(CIRCUIT_OPEN_REPLY);
+            return;
+        }
+
+        Consumer<Outcome> finish = outcome -> {
+            if (outcome.cancelled) {
+                breaker.recordCancelled();
+                reply.complete(null);
+                return;
+            }
+            breaker.recordResult(outcome.serverFailure);
+            if (shouldRetry(outcome, retry, reply.signal)) {
+                scheduleRetry(retry, () -> sendReply(message, listener, reply, retry + 1));
             } else {
-                int statusCode = response.code();
-                Log.e(TAG, "API request failed: " + statusCode);
-                switch (statusCode) {
-                    case 404:
-                        return "服务未启动，请稍后重试";
-                    case 500:
-                        return "服务器内部错误，请稍后重试";
-                    default:
-                        return "请求失败 (" + statusCode + ")";
+                reply.complete(outcome.reply);
+            }
+        };
+        if (listener != null) {
+            enqueueStream(message, listener, reply.signal, finish);
+        } else if (configManager.isHedgingEnabled()) {
+            enqueueHedged(message, reply.signal, finish);
+        } else {
+            enqueueReply(newCall(chatRequest("/api/chat", requestCodec.encodeChat(message)), reply.signal), finish);
+        }
+    }
+
+    private void enqueueReply(Call call, Consumer<Outcome> finish) {
+        long startTime = System.currentTimeMillis();
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    finish.accept(readReply(r, startTime));
+                } catch (IOException e) {
+                    finish.accept(ioFailure(call, e, startTime));
                 }
             }
-        } catch (SocketTimeoutException e) {
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                finish.accept(ioFailure(call, e, startTime));
+            }
+        });
+    }
+
+    private Outcome readReply(Response response, long startTime) throws IOException {
+        if (!response.isSuccessful()) {
+            return httpFailure(response.code(), startTime);
+        }
+        // 流式读取 reply 字段
+        String reply = negotiate(response).decodeReply(response.body().source());
+        stats.recordSuccess(System.currentTimeMillis() - startTime);
+        if (reply == null) {
+            Log.e(TAG, "解析响应失败: missing reply");
+            return Outcome.completed("解析响应失败");
+        }
+        return Outcome.completed(reply);
+    }
+
+    /**
+     * 对冲请求：超过最近延迟的分位数仍未返回时再发一个相同请求，先成功的生效，另一个立即取消
+     * 延迟样本不足时退化为普通请求
+     */
+    private void enqueueHedged(String message, CancellationSignal signal, Consumer<Outcome> finish) {
+        long hedgeDelay = stats.getLatencyPercentile(HEDGE_PERCENTILE);
+        if (hedgeDelay < 0) {
+            enqueueReply(newCall(chatRequest("/api/chat", requestCodec.encodeChat(message)), signal), finish);
+            return;
+        }
+        long delay = Math.max(hedgeDelay, MIN_HEDGE_DELAY_MS);
+
+        HedgedCall hedged = new HedgedCall(finish);
+        signal.setOnCancelListener(hedged::cancelAll);
+        enqueueReply(hedged.add(client.newCall(chatRequest("/api/chat", requestCodec.encodeChat(message)))),
+                hedged::onOutcome);
+        transport.getScheduler().schedule(() -> {
+            if (hedged.isDone()) {
+                return;
+            }
+            Log.d(TAG, "No reply after " + delay + "ms, sending hedged request");
+            stats.recordHedge();
+            enqueueReply(hedged.add(client.newCall(chatRequest("/api/chat", requestCodec.encodeChat(message)))),
+                    hedged::onOutcome);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 流式请求：片段在网络线程上回调 listener，流结束后回调完整回复
+     */
+    private void enqueueStream(String message, StreamListener listener, CancellationSignal signal,
+                               Consumer<Outcome> finish) {
+        long startTime = System.currentTimeMillis();
+        newCall(chatRequest("/api/chat/stream", requestCodec.encodeChat(message)), signal)
+                .enqueue(new Callback() {
+                    @Override
+                    public void onResponse(Call call, Response response) {
+                        try (Response r = response) {
+                            finish.accept(readStream(r, listener, startTime));
+                        } catch (IOException e) {
+                            finish.accept(ioFailure(call, e, startTime));
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        finish.accept(ioFailure(call, e, startTime));
+                    }
+                });
+    }
+
+    private Outcome readStream(Response response, StreamListener listener, long startTime) throws IOException {
+        if (!response.isSuccessful()) {
+            return httpFailure(response.code(), startTime);
+        }
+
+        StringBuilder text = new StringBuilder();
+        ChatCodec.FrameReader frames = negotiate(response).newFrameReader(response.body().source());
+        StreamFrame frame = new StreamFrame();
+        while (frames.next(frame)) {
+            if (StreamFrame.TYPE_DELTA.equals(frame.type)) {
+                if (frame.text != null) {
+                    text.append(frame.text);
+                }
+                listener.onPartial(text);
+            } else if (StreamFrame.TYPE_DONE.equals(frame.type)) {
+                stats.recordSuccess(System.currentTimeMillis() - startTime);
+                return Outcome.completed(frame.reply != null ? frame.reply : text.toString());
+            } else if (StreamFrame.TYPE_ERROR.equals(frame.type)) {
+                Log.e(TAG, "Stream error: " + frame.error);
+                return streamFailure(text, startTime);
+            }
+        }
+        Log.e(TAG, "Stream ended before done");
+        return streamFailure(text, startTime);
+    }
+
+    // 流式回复出错或中断：计入失败和熔断；已经输出过片段，不再重试，保留已输出的内容
+    private Outcome streamFailure(CharSequence partial, long startTime) {
+        stats.recordFailure(System.currentTimeMillis() - startTime);
+        String reply = partial.length() > 0 ? partial.toString() : "回复生成失败，请稍后重试";
+        return Outcome.failed(reply, true, false);
+    }
+
+    private void sendBatch(String message, List<String> botIds, CancellationSignal signal,
+                           CompletableFuture<Map<String, String>> future, int retry) {
+        CircuitBreaker breaker = circuitBreaker();
+        if (!breaker.allowRequest()) {
+            Log.w(TAG, "Circuit open, rejecting batch request to " + breaker.getEndpoint());
+            future.complete(fillReplies(botIds, CIRCUIT_OPEN_REPLY));
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        newCall(chatRequest("/api/chat/batch", requestCodec.encodeBatch(message, botIds)), signal)
+                .enqueue(new Callback() {
+                    @Override
+                    public void onResponse(Call call, Response response) {
+                        try (Response r = response) {
+                            if (!r.isSuccessful()) {
+                                finish(httpFailure(r.code(), startTime), null);
+                                return;
+                            }
+                            Map<String, String> replies = negotiate(r).decodeBatchReplies(r.body().source());
+                            stats.recordSuccess(System.currentTimeMillis() - startTime);
+                            finish(Outcome.completed(null), withMissingReplies(replies, botIds));
+                        } catch (IOException e) {
+                            finish(ioFailure(call, e, startTime), null);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        finish(ioFailure(call, e, startTime), null);
+                    }
+
+                    private void finish(Outcome outcome, Map<String, String> replies) {
+                        if (outcome.cancelled) {
+                            breaker.recordCancelled();
+                            future.complete(fillReplies(botIds, null));
+                            return;
+                        }
+                        breaker.recordResult(outcome.serverFailure);
+                        if (replies != null) {
+                            future.complete(replies);
+                        } else if (shouldRetry(outcome, retry, signal)) {
+                            scheduleRetry(retry, () -> sendBatch(message, botIds, signal, future, retry + 1));
+                        } else {
+                            future.complete(fillReplies(botIds, outcome.reply));
+                        }
+                    }
+                });
+    }
+
+    private void sendBatchStream(String message, List<String> botIds, BatchStreamListener listener,
+                                 CancellationSignal signal, int retry) {
+        CircuitBreaker breaker = circuitBreaker();
+        if (!breaker.allowRequest()) {
+            Log.w(TAG, "Circuit open, rejecting batch stream to " + breaker.getEndpoint());
+            for (String botId : botIds) {
+                listener.onReply(botId, CIRCUIT_OPEN_REPLY);
+            }
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        newCall(chatRequest("/api/chat/batch/stream", requestCodec.encodeBatch(message, botIds)), signal)
+                .enqueue(new Callback() {
+                    @Override
+                    public void onResponse(Call call, Response response) {
+                        Set<String> pending = new HashSet<>(botIds);
+                        Outcome outcome;
+                        try (Response r = response) {
+                            if (!r.isSuccessful()) {
+                                outcome = httpFailure(r.code(), startTime);
+                            } else {
+                                boolean failed = readBatchFrames(negotiate(r).newFrameReader(r.body().source()),
+                                        pending, listener);
+                                if (failed || !pending.isEmpty()) {
+                                    // 流提前结束时，未完成的机器人统一给出提示
+                                    Log.e(TAG, "Batch stream failed, " + pending.size() + " bot(s) unfinished");
+                                    stats.recordFailure(System.currentTimeMillis() - startTime);
+                                    outcome = Outcome.failed("回复生成失败，请稍后重试", true, false);
+                                } else {
+                                    stats.recordSuccess(System.currentTimeMillis() - startTime);
+                                    outcome = Outcome.completed(null);
+                                }
+                            }
+                        } catch (IOException e) {
+                            outcome = ioFailure(call, e, startTime);
+                        }
+                        finish(outcome, pending);
+                    }
+
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        finish(ioFailure(call, e, startTime), new HashSet<>(botIds));
+                    }
+
+                    private void finish(Outcome outcome, Set<String> pending) {
+                        if (outcome.cancelled) {
+                            breaker.recordCancelled();
+                        } else {
+                            breaker.recordResult(outcome.serverFailure);
+                            // 可重试的失败都发生在收到任何帧之前，整体重试不会重复回调
+                            if (shouldRetry(outcome, retry, signal)) {
+                                scheduleRetry(retry,
+                                        () -> sendBatchStream(message, botIds, listener, signal, retry + 1));
+                                return;
+                            }
+                        }
+                        for (String botId : pending) {
+                            listener.onReply(botId, outcome.reply);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * @return 是否有机器人的回复以错误帧结束
+     */
+    private boolean readBatchFrames(ChatCodec.FrameReader frames, Set<String> pending, BatchStreamListener listener)
+            throws IOException {
+        boolean failed = false;
+        Map<String, StringBuilder> texts = new HashMap<>();
+        StreamFrame frame = new StreamFrame();
+        while (!pending.isEmpty() && frames.next(frame)) {
+            String botId = frame.botId;
+            if (botId == null || !pending.contains(botId)) {
+                continue;
+            }
+            StringBuilder text = texts.get(botId);
+            if (text == null) {
+                text = new StringBuilder();
+                texts.put(botId, text);
+            }
+            if (StreamFrame.TYPE_DELTA.equals(frame.type)) {
+                if (frame.text != null) {
+                    text.append(frame.text);
+                }
+                listener.onPartial(botId, text);
+            } else if (StreamFrame.TYPE_DONE.equals(frame.type)) {
+                pending.remove(botId);
+                listener.onReply(botId, frame.reply != null ? frame.reply : text.toString());
+            } else if (StreamFrame.TYPE_ERROR.equals(frame.type)) {
+                Log.e(TAG, "Batch stream error for " + botId + ": " + frame.error);
+                failed = true;
+                pending.remove(botId);
+                listener.onReply(botId, text.length() > 0 ? text.toString() : "回复生成失败，请稍后重试");
+            }
+        }
+        return failed;
+    }
+
+    private Request chatRequest(String path, RequestBody body) {
+        return new Request.Builder()
+                .url(getBaseUrl() + path)
+                .header("Accept", ChatCodec.ACCEPT)
+                .post(body)
+                .build();
+    }
+
+    // 取消信号触发时中止调用，OkHttp 关闭连接，服务端据此感知客户端断开
+    private Call newCall(Request request, CancellationSignal signal) {
+        Call call = client.newCall(request);
+        if (signal != null) {
+            signal.setOnCancelListener(call::cancel);
+        }
+        return call;
+    }
+
+    // 服务端用二进制格式应答，说明它也能解析二进制请求，后续请求随之切换
+    private ChatCodec negotiate(Response response) {
+        ChatCodec codec = ChatCodec.forResponse(response.body().contentType());
+        if (codec == MsgpackChatCodec.INSTANCE && requestCodec != codec) {
+            Log.i(TAG, "Server supports " + codec.mediaType() + ", switching request encoding");
+            requestCodec = codec;
+        }
+        return codec;
+    }
+
+    private static boolean shouldRetry(Outcome outcome, int retry, CancellationSignal signal) {
+        return outcome.retryable && retry < RetryPolicy.MAX_RETRIES && (signal == null || !signal.isCanceled());
+    }
+
+    private void scheduleRetry(int retry, Runnable resend) {
+        long delay = RetryPolicy.backoffDelayMs(retry);
+        Log.w(TAG, "Retrying in " + delay + "ms (retry " + (retry + 1) + ")");
+        stats.recordRetry();
+        transport.getScheduler().schedule(resend, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private Outcome httpFailure(int statusCode, long startTime) {
+        stats.recordFailure(System.currentTimeMillis() - startTime);
+        Log.e(TAG, "API request failed: " + statusCode);
+        boolean retryable = RetryPolicy.isRetryable(statusCode);
+        if (statusCode == 415 && requestCodec != JsonChatCodec.INSTANCE) {
+            // 服务端不再接受二进制请求（例如降级到旧版本），退回JSON后重试，再次415时不再重试
+            Log.i(TAG, "Server rejected " + requestCodec.mediaType() + ", falling back to JSON");
+            requestCodec = JsonChatCodec.INSTANCE;
+            retryable = true;
+        }
+        return Outcome.failed(describeHttpFailure(statusCode), statusCode >= 500, retryable);
+    }
+
+    // 取消的请求不计入统计；解析失败说明服务端仍然可用，不计入熔断
+    private Outcome ioFailure(Call call, IOException e, long startTime) {
+        if (call.isCanceled()) {
+            Log.d(TAG, "Request cancelled");
+            return Outcome.CANCELLED;
+        }
+        stats.recordFailure(System.currentTimeMillis() - startTime);
+        if (e instanceof MalformedPayloadException) {
+            Log.e(TAG, "解析响应失败", e);
+            return Outcome.completed("解析响应失败");
+        }
+        boolean serverFailure = e instanceof ConnectException || e instanceof SocketTimeoutException;
+        return Outcome.failed(describeIoFailure(e), serverFailure, RetryPolicy.isRetryable(e));
+    }
+
+    // 服务端漏掉的机器人统一给出错误提示
+    private static Map<String, String> withMissingReplies(Map<String, String> replies, List<String> botIds) {
+        for (String botId : botIds) {
+            if (!replies.containsKey(botId)) {
+                replies.put(botId, "解析响应失败");
+            }
+        }
+        return replies;
+    }
+
+    private static Map<String, String> fillReplies(List<String> botIds, String text) {
+        Map<String, String> replies = new HashMap<>();
+        for (String botId : botIds) {
+            replies.put(botId, text);
+        }
+        return replies;
+    }
+
+    private static String describeHttpFailure(int statusCode) {
+        switch (statusCode) {
+            case 404:
+                return "服务未启动，请稍后重试";
+            case 500:
+                return "服务器内部错误，请稍后重试";
+            default:
+                return "请求失败 (" + statusCode + ")";
+        }
+    }
+
+    private static String describeIoFailure(IOException e) {
+        if (e instanceof SocketTimeoutException) {
             Log.e(TAG, "API request timeout", e);
             return "请求超时，请检查服务状态";
-        } catch (ConnectException e) {
+        } else if (e instanceof ConnectException) {
             Log.e(TAG, "Connection failed", e);
             return "连接失败，请确保服务正在运行";
-        } catch (IOException e) {
+        } else {
             Log.e(TAG, "Error making API request", e);
             return "网络错误，请稍后重试";
         }
     }
 
+    /**
+     * 健康检查结果同时用于驱动熔断器
+     */
+    @Override
     public boolean checkHealth() {
         Request request = new Request.Builder()
                 .url(getBaseUrl() + "/api/health")
                 .get()
                 .build();
 
-        try {
-            Response response = client.newCall(request).execute();
-            return response.isSuccessful();
+        boolean healthy;
+        try (Response response = client.newCall(request).execute()) {
+            healthy = response.isSuccessful();
         } catch (Exception e) {
             Log.e(TAG, "Health check failed", e);
-            return false;
-        }
-    }
-
-    // JSON字符串转义，防止注入攻击
-    private String escapeJson(String input) {
-        if (input == null) {
-            return "";
-        }
-        StringBuilder sb = new StringBuilder();
-        for (char c : input.toCharArray()) {
-            switch (c) {
-                case '"':
-                    sb.append("\\\"");
-                    break;
-                case '\\':
-                    sb.append("\\\\");
-                    break;
-                case '\b':
-                    sb.append("\\b");
-                    break;
-                case '\f':
-                    sb.append("\\f");
-                    break;
-                case '\n':
-                    sb.append("\\n");
-                    break;
-                case '\r':
-                    sb.append("\\r");
-                    break;
-                case '\t':
-                    sb.append("\\t");
-                    break;
-                default:
-                    if (c < ' ') {
-                        String hex = Integer.toHexString(c);
-                        sb.append("\\u");
-                        for (int i = 0; i < 4 - hex.length(); i++) {
-                            sb.append('0');
-                        }
-                        sb.append(hex);
-                    } else {
-                        sb.append(c);
-                    }
+            healthy = false;
+        }
+        circuitBreaker().recordHealthCheck(healthy);
+        return healthy;
+    }
+
+    @Override
+    public ClientStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 单次请求的结果
+     */
+    private static final class Outcome {
+
+        static final Outcome CANCELLED = new Outcome(null, false, false, false, true);
+
+        // 回复或面向用户的错误提示，取消时为 null
+        final String reply;
+        final boolean failure;
+        // 连接失败、超时和5xx，计入熔断器
+        final boolean serverFailure;
+        // 请求确定没有被服务端处理，可以安全重试
+        final boolean retryable;
+        final boolean cancelled;
+
+        private Outcome(String reply, boolean failure, boolean serverFailure, boolean retryable,
+                        boolean cancelled) {
+            this.reply = reply;
+            this.failure = failure;
+            this.serverFailure = serverFailure;
+            this.retryable = retryable;
+            this.cancelled = cancelled;
+        }
+
+        static Outcome completed(String reply) {
+            return new Outcome(reply, false, false, false, false);
+        }
+
+        static Outcome failed(String reply, boolean serverFailure, boolean retryable) {
+            return new Outcome(reply, true, serverFailure, retryable, false);
+        }
+    }
+
+    /**
+     * 一组相同的对冲请求，第一个成功的结果生效并取消其余请求，全部失败时取最后一个失败结果
+     */
+    private static final class HedgedCall {
+
+        private final Consumer<Outcome> finish;
+        private final List<Call> calls = new CopyOnWriteArrayList<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        HedgedCall(Consumer<Outcome> finish) {
+            this.finish = finish;
+        }
+
+        Call add(Call call) {
+            outstanding.incrementAndGet();
+            calls.add(call);
+            if (done.get()) {
+                call.cancel();
+            }
+            return call;
+        }
+
+        void onOutcome(Outcome outcome) {
+            boolean last = outstanding.decrementAndGet() == 0;
+            if ((last || (!outcome.failure && !outcome.cancelled)) && done.compareAndSet(false, true)) {
+                cancelAll();
+                finish.accept(outcome);
+            }
+        }
+
+        boolean isDone() {
+            return done.get();
+        }
+
+        void cancelAll() {
+            for (Call call : calls) {
+                call.cancel();
             }
         }
-        return sb.toString();
     }
 }
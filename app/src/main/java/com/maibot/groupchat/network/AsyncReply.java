@@ -0,0 +1,141 @@
+package com.maibot.groupchat.network;
+
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个异步回复的完成控制
+ * 结果只完成一次，并在调用方指定的线程上完成；调用方取消 future 时通过取消信号中止请求
+ */
+final class AsyncReply {
+
+    private static final String TAG = "AsyncReply";
+
+    static final String TIMEOUT_REPLY = "请求超时，请检查服务状态";
+
+    final CompletableFuture<String> future = new CompletableFuture<>();
+    final CancellationSignal signal = new CancellationSignal();
+
+    private final Executor executor;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    AsyncReply(Executor executor) {
+        this.executor = executor;
+        future.whenComplete((reply, error) -> {
+            if (future.isCancelled()) {
+                signal.cancel();
+            }
+        });
+    }
+
+    void complete(String reply) {
+        if (completed.compareAndSet(false, true)) {
+            executor.execute(() -> future.complete(reply));
+        }
+    }
+
+    /**
+     * 整个调用（包括重试）超过 timeoutMs 后以超时提示完成，并中止仍在进行的请求
+     */
+    void scheduleTimeout(ScheduledExecutorService scheduler, long timeoutMs) {
+        if (timeoutMs <= 0) {
+            return;
+        }
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+            Log.w(TAG, "Reply timed out after " + timeoutMs + "ms");
+            timeOut();
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((reply, error) -> timeout.cancel(false));
+    }
+
+    /**
+     * 流式调用的空闲超时：等待第一个片段或两个片段之间超过 idleTimeoutMs 时超时，
+     * 持续输出的长回复不受总时长限制
+     *
+     * @return 包装后的监听器，每个片段都会推迟超时
+     */
+    StreamListener watchIdle(ScheduledExecutorService scheduler, long idleTimeoutMs, StreamListener listener) {
+        if (idleTimeoutMs <= 0) {
+            return listener;
+        }
+        IdleWatch watch = new IdleWatch(scheduler, idleTimeoutMs);
+        watch.schedule(idleTimeoutMs);
+        return text -> {
+            watch.lastActivity = System.currentTimeMillis();
+            listener.onPartial(text);
+        };
+    }
+
+    private void timeOut() {
+        complete(TIMEOUT_REPLY);
+        signal.cancel();
+    }
+
+    /**
+     * 片段到达时只记录时间，不重新排定任务；检查时如果期间有片段到达，按剩余时间再次检查
+     */
+    private final class IdleWatch implements Runnable {
+        private final ScheduledExecutorService scheduler;
+        private final long idleTimeoutMs;
+        volatile long lastActivity = System.currentTimeMillis();
+        private volatile ScheduledFuture<?> check;
+
+        IdleWatch(ScheduledExecutorService scheduler, long idleTimeoutMs) {
+            this.scheduler = scheduler;
+            this.idleTimeoutMs = idleTimeoutMs;
+            future.whenComplete((reply, error) -> {
+                ScheduledFuture<?> pending = check;
+                if (pending != null) {
+                    pending.cancel(false);
+                }
+            });
+        }
+
+        void schedule(long delayMs) {
+            if (!future.isDone()) {
+                check = scheduler.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void run() {
+            long idle = System.currentTimeMillis() - lastActivity;
+            if (idle < idleTimeoutMs) {
+                schedule(idleTimeoutMs - idle);
+                return;
+            }
+            Log.w(TAG, "Stream idle for " + idle + "ms, timing out");
+            timeOut();
+        }
+    }
+
+    /**
+     * 阻塞等待异步回复，供同步接口使用；取消信号触发或线程被中断时取消请求并返回 null
+     */
+    static String await(CompletableFuture<String> future, CancellationSignal signal) {
+        if (signal != null) {
+            signal.setOnCancelListener(() -> future.cancel(false));
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Reply failed", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.maibot.groupchat.network;
+
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量分发器 - 将同一时刻发给多个机器人的同一条消息合并为一次批量请求
+ * 所有机器人加入后立即发送，否则在短暂的合并窗口结束时发送
+ * 单个机器人取消只影响它自己的结果，全部参与者都取消后才中止整个批量请求
+ * 发送前按提供商额度限速，额度不足时延后整个批次
+ */
+public class BatchDispatcher {
+
+    private static final String TAG = "BatchDispatcher";
+    private static final long BATCH_WINDOW_MS = 20;
+
+    private final ChatTransport transport;
+    private final ProviderRateLimiter rateLimiter;
+    private final ScheduledExecutorService timer;
+    private final Object lock = new Object();
+    private PendingBatch pending;
+    private volatile int expectedParticipants;
+
+    public BatchDispatcher(ChatTransport transport, ProviderRateLimiter rateLimiter) {
+        this.transport = transport;
+        this.rateLimiter = rateLimiter;
+        this.timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * 设置预期参与的机器人数量，凑齐后不再等待合并窗口
+     */
+    public void setExpectedParticipants(int count) {
+        this.expectedParticipants = count;
+    }
+
+    public boolean isBatchingUseful() {
+        return expectedParticipants > 1;
+    }
+
+    /**
+     * 提交一个机器人的消息，返回该机器人的回复
+     *
+     * @param listener 流式片段监听器，为 null 时不使用流式接口
+     * @param signal   取消信号，取消后返回的 future 随之取消
+     */
+    public CompletableFuture<String> submit(String botId, String message, StreamListener listener,
+                                            CancellationSignal signal) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Participant participant = new Participant(future, listener);
+        PendingBatch joinedBatch;
+        PendingBatch staleBatch = null;
+        PendingBatch readyBatch = null;
+
+        synchronized (lock) {
+            // 消息不同或同一机器人重复提交时，先发出旧批次
+            if (pending != null && (!pending.message.equals(message) || pending.replies.containsKey(botId))) {
+                staleBatch = pending;
+                pending = null;
+            }
+            if (pending == null) {
+                PendingBatch batch = new PendingBatch(message);
+                pending = batch;
+                timer.schedule(() -> flushIfPending(batch), BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+            joinedBatch = pending;
+            pending.replies.put(botId, participant);
+            if (pending.replies.size() >= expectedParticipants) {
+                readyBatch = pending;
+                pending = null;
+            }
+        }
+
+        if (signal != null) {
+            signal.setOnCancelListener(() -> cancel(joinedBatch, participant));
+        }
+        if (staleBatch != null) {
+            pace(staleBatch);
+        }
+        if (readyBatch != null) {
+            pace(readyBatch);
+        }
+        return future;
+    }
+
+    private void cancel(PendingBatch batch, Participant participant) {
+        participant.future.cancel(false);
+        boolean abort;
+        synchronized (lock) {
+            if (participant.cancelled) {
+                return;
+            }
+            participant.cancelled = true;
+            batch.cancelledCount++;
+            abort = batch.sent && batch.isAllCancelled();
+        }
+        if (abort) {
+            Log.d(TAG, "All participants cancelled, aborting batch");
+            batch.signal.cancel();
+        }
+    }
+
+    private void flushIfPending(PendingBatch batch) {
+        synchronized (lock) {
+            if (pending != batch) {
+                return;
+            }
+            pending = null;
+        }
+        pace(batch);
+    }
+
+    // 服务端为批次中的每个机器人各调用一次模型，按机器人数量占用额度
+    private void pace(PendingBatch batch) {
+        int count = batch.replies.size();
+        long waitMs = rateLimiter.reserve(count, count * ProviderRateLimiter.estimateTokens(batch.message));
+        if (waitMs > 0) {
+            timer.schedule(() -> send(batch), waitMs, TimeUnit.MILLISECONDS);
+        } else {
+            send(batch);
+        }
+    }
+
+    private void send(PendingBatch batch) {
+        synchronized (lock) {
+            batch.sent = true;
+            if (batch.isAllCancelled()) {
+                Log.d(TAG, "Batch cancelled before sending");
+                return;
+            }
+        }
+        Log.d(TAG, "Sending batch for " + batch.replies.size() + " bots");
+        List<String> botIds = new ArrayList<>(batch.replies.keySet());
+
+        if (!batch.isStreaming()) {
+            // 请求失败时每个参与者都以同一个错误结束，缺少回复的机器人得到 null，不会有参与者一直等待
+            transport.getBatchReplies(batch.message, botIds, batch.signal)
+                    .whenComplete((replies, error) -> {
+                        for (Map.Entry<String, Participant> entry : batch.replies.entrySet()) {
+                            CompletableFuture<String> future = entry.getValue().future;
+                            if (error != null) {
+                                future.completeExceptionally(error);
+                            } else {
+                                future.complete(replies != null ? replies.get(entry.getKey()) : null);
+                            }
+                        }
+                    });
+            return;
+        }
+
+        transport.streamBatchReplies(batch.message, botIds, new BatchStreamListener() {
+            @Override
+            public void onPartial(String botId, CharSequence text) {
+                Participant participant = batch.replies.get(botId);
+                if (participant != null && participant.listener != null) {
+                    participant.listener.onPartial(text);
+                }
+            }
+
+            @Override
+            public void onReply(String botId, String reply) {
+                Participant participant = batch.replies.get(botId);
+                if (participant != null) {
+                    participant.future.complete(reply);
+                }
+            }
+        }, batch.signal);
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private static class PendingBatch {
+        final String message;
+        final Map<String, Participant> replies = new LinkedHashMap<>();
+        // 整个批量请求的取消信号，由 lock 保护的计数决定何时触发
+        final CancellationSignal signal = new CancellationSignal();
+        int cancelledCount;
+        boolean sent;
+
+        PendingBatch(String message) {
+            this.message = message;
+        }
+
+        boolean isStreaming() {
+            for (Participant participant : replies.values()) {
+                if (participant.listener != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isAllCancelled() {
+            return cancelledCount >= replies.size();
+        }
+    }
+
+    private static class Participant {
+        final CompletableFuture<String> future;
+        final StreamListener listener;
+        boolean cancelled;
+
+        Participant(CompletableFuture<String> future, StreamListener listener) {
+            this.future = future;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.maibot.groupchat.network;
+
+/**
+ * 批量流式回复监听器 - 多个机器人的帧复用同一个响应流
+ */
+public interface BatchStreamListener {
+
+    /**
+     * 某个机器人收到新的回复片段
+     *
+     * @param text 该机器人目前为止累计的回复文本，只在回调期间有效，需要保留时调用 toString()
+     */
+    void onPartial(String botId, CharSequence text);
+
+    /**
+     * 某个机器人的回复结束，失败时 reply 为错误提示，每个机器人只回调一次
+     */
+    void onReply(String botId, String reply);
+}
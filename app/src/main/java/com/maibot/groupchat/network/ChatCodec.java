@@ -0,0 +1,62 @@
+package com.maibot.groupchat.network;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSource;
+
+/**
+ * 聊天协议的编解码器，ApiClient 根据 Accept/Content-Type 协商选择具体实现
+ * 解码失败统一抛出 {@link MalformedPayloadException}
+ */
+interface ChatCodec {
+
+    // 优先二进制格式，JSON/NDJSON 作为兜底，旧版本服务端会忽略并返回JSON
+    String ACCEPT = "application/x-msgpack, application/json;q=0.9, application/x-ndjson;q=0.9";
+
+    /**
+     * 按响应的 Content-Type 选择解码器，无法识别时按JSON处理
+     */
+    static ChatCodec forResponse(MediaType contentType) {
+        if (contentType != null && MsgpackChatCodec.MEDIA_TYPE.subtype().equals(contentType.subtype())) {
+            return MsgpackChatCodec.INSTANCE;
+        }
+        return JsonChatCodec.INSTANCE;
+    }
+
+    MediaType mediaType();
+
+    RequestBody encodeChat(String message);
+
+    RequestBody encodeBatch(String message, List<String> botIds);
+
+    /**
+     * 读取 /api/chat 响应中的 reply 字段
+     *
+     * @return 回复文本，响应中没有 reply 时返回 null
+     */
+    String decodeReply(BufferedSource source) throws IOException;
+
+    /**
+     * 读取 /api/chat/batch 响应，返回 机器人ID -> 回复文本
+     */
+    Map<String, String> decodeBatchReplies(BufferedSource source) throws IOException;
+
+    /**
+     * 为一个流式响应创建帧读取器，读取器可能持有自己的缓冲区，不能跨响应复用
+     */
+    FrameReader newFrameReader(BufferedSource source);
+
+    interface FrameReader {
+
+        /**
+         * 读取下一帧到 frame
+         *
+         * @return 流已结束时返回 false
+         */
+        boolean next(StreamFrame frame) throws IOException;
+    }
+}
@@ -0,0 +1,59 @@
+package com.maibot.groupchat.network;
+
+import android.os.CancellationSignal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 聊天传输通道 - HTTP（{@link ApiClient}）和进程内Python桥接（{@link PythonBridgeClient}）的公共接口
+ * 失败时返回面向用户的提示文本，而不是抛出异常
+ * 所有方法都接受可选的 {@link CancellationSignal}：取消后立即中止请求并释放连接，
+ * 服务端随之取消正在进行的模型调用，被取消的请求返回 null
+ */
+public interface ChatTransport {
+
+    /**
+     * 异步获取单个回复，等待期间不占用任何线程
+     *
+     * @param listener  流式片段监听器，为 null 时不使用流式接口；片段在网络线程上回调
+     * @param timeoutMs 非流式调用为整个调用（包括重试）的超时时间；流式调用为等待第一个片段
+     *                  以及相邻片段之间的最长间隔，持续输出的回复不会超时；超时后以超时提示完成，0 表示不限制
+     * @param executor  完成 future 的线程，后续阶段默认也在这个线程上执行
+     * @return 回复文本；取消返回的 future 会中止请求
+     */
+    CompletableFuture<String> getReplyAsync(String message, StreamListener listener, long timeoutMs,
+                                            Executor executor);
+
+    /**
+     * 阻塞获取单个回复
+     */
+    default String getReply(String message, CancellationSignal signal) {
+        return AsyncReply.await(getReplyAsync(message, null, 0, Runnable::run), signal);
+    }
+
+    /**
+     * 流式获取单个回复，阻塞直到回复结束并返回完整回复
+     */
+    default String streamReply(String message, StreamListener listener, CancellationSignal signal) {
+        return AsyncReply.await(getReplyAsync(message, listener, 0, Runnable::run), signal);
+    }
+
+    /**
+     * 批量获取多个机器人的回复，返回 机器人ID -> 回复文本
+     */
+    CompletableFuture<Map<String, String>> getBatchReplies(String message, List<String> botIds,
+                                                          CancellationSignal signal);
+
+    /**
+     * 批量流式获取回复，异步回调
+     */
+    void streamBatchReplies(String message, List<String> botIds, BatchStreamListener listener,
+                            CancellationSignal signal);
+
+    boolean checkHealth();
+
+    ClientStats getStats();
+}
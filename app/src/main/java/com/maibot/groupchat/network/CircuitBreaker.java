@@ -0,0 +1,151 @@
+package com.maibot.groupchat.network;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 单个服务端点的熔断器
+ * 连续失败达到阈值后打开，打开期间直接拒绝请求，避免多个机器人同时在已失效的服务上等待超时；
+ * 冷却时间结束或健康检查恢复后进入半开状态，只放行一个探测请求，成功则关闭，失败则重新打开；
+ * 探测请求被取消时重新放行下一个请求，半开状态下健康检查成功也直接关闭
+ */
+public class CircuitBreaker {
+
+    private static final String TAG = "CircuitBreaker";
+
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_DURATION_MS = 10000;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public interface Listener {
+        void onStateChanged(String endpoint, State state);
+    }
+
+    private final String endpoint;
+    private final Listener listener;
+    // 单元测试中替换为可控的时钟
+    private final LongSupplier clock;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    CircuitBreaker(String endpoint, Listener listener) {
+        this(endpoint, listener, SystemClock::elapsedRealtime);
+    }
+
+    CircuitBreaker(String endpoint, Listener listener, LongSupplier clock) {
+        this.endpoint = endpoint;
+        this.listener = listener;
+        this.clock = clock;
+    }
+
+    /**
+     * 是否允许发出请求，半开状态下只放行一个探测请求
+     */
+    public boolean allowRequest() {
+        State changed = null;
+        boolean allowed;
+        synchronized (this) {
+            if (state == State.OPEN && clock.getAsLong() - openedAt >= OPEN_DURATION_MS) {
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+                changed = state;
+            }
+            if (state == State.HALF_OPEN && !probeInFlight) {
+                probeInFlight = true;
+                allowed = true;
+            } else {
+                allowed = state == State.CLOSED;
+            }
+        }
+        notifyChanged(changed);
+        return allowed;
+    }
+
+    /**
+     * 记录一次请求结果，只有连接失败、超时和5xx才算失败，业务错误说明服务仍然可用
+     */
+    public void recordResult(boolean serverFailure) {
+        State changed;
+        synchronized (this) {
+            probeInFlight = false;
+            if (serverFailure) {
+                consecutiveFailures++;
+                changed = state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD ? trip() : null;
+            } else {
+                consecutiveFailures = 0;
+                changed = transitionTo(State.CLOSED);
+            }
+        }
+        notifyChanged(changed);
+    }
+
+    /**
+     * 请求被取消，没有结果可以记录；如果它是半开状态下的探测请求，放行下一个请求继续探测
+     */
+    public synchronized void recordCancelled() {
+        probeInFlight = false;
+    }
+
+    /**
+     * 记录健康检查结果：失败立即打开，打开状态下检查成功则提前进入半开，半开状态下检查成功则关闭
+     */
+    public void recordHealthCheck(boolean healthy) {
+        State changed;
+        synchronized (this) {
+            if (!healthy) {
+                changed = state == State.OPEN ? null : trip();
+            } else if (state == State.OPEN) {
+                probeInFlight = false;
+                changed = transitionTo(State.HALF_OPEN);
+            } else if (state == State.HALF_OPEN) {
+                consecutiveFailures = 0;
+                probeInFlight = false;
+                changed = transitionTo(State.CLOSED);
+            } else {
+                changed = null;
+            }
+        }
+        notifyChanged(changed);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    private State trip() {
+        openedAt = clock.getAsLong();
+        return transitionTo(State.OPEN);
+    }
+
+    // 返回新状态，状态未变化时返回 null
+    private State transitionTo(State next) {
+        if (state == next) {
+            return null;
+        }
+        state = next;
+        return next;
+    }
+
+    private void notifyChanged(State changed) {
+        if (changed == null) {
+            return;
+        }
+        Log.i(TAG, endpoint + " -> " + changed);
+        if (listener != null) {
+            listener.onStateChanged(endpoint, changed);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.maibot.groupchat.network;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个客户端视图的请求统计
+ */
+public class ClientStats {
+
+    // 计算延迟分位数使用最近的成功请求样本
+    private static final int LATENCY_WINDOW = 64;
+    private static final int MIN_PERCENTILE_SAMPLES = 16;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong lastLatencyMs = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final long[] recentLatencies = new long[LATENCY_WINDOW];
+    private int recentCount;
+    private int recentNext;
+
+    void recordSuccess(long latencyMs) {
+        requestCount.incrementAndGet();
+        totalLatencyMs.addAndGet(latencyMs);
+        lastLatencyMs.set(latencyMs);
+        synchronized (recentLatencies) {
+            recentLatencies[recentNext] = latencyMs;
+            recentNext = (recentNext + 1) % LATENCY_WINDOW;
+            recentCount = Math.min(recentCount + 1, LATENCY_WINDOW);
+        }
+    }
+
+    void recordFailure(long latencyMs) {
+        requestCount.incrementAndGet();
+        failureCount.incrementAndGet();
+        totalLatencyMs.addAndGet(latencyMs);
+        lastLatencyMs.set(latencyMs);
+    }
+
+    void recordRetry() {
+        retryCount.incrementAndGet();
+    }
+
+    void recordHedge() {
+        hedgeCount.incrementAndGet();
+    }
+
+    /**
+     * 最近成功请求的延迟分位数，样本不足时返回 -1
+     *
+     * @param percentile 0-100
+     */
+    public long getLatencyPercentile(int percentile) {
+        long[] samples;
+        synchronized (recentLatencies) {
+            if (recentCount < MIN_PERCENTILE_SAMPLES) {
+                return -1;
+            }
+            samples = Arrays.copyOf(recentLatencies, recentCount);
+        }
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percentile / 100.0 * samples.length) - 1;
+        return samples[Math.max(0, Math.min(index, samples.length - 1))];
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public long getLastLatencyMs() {
+        return lastLatencyMs.get();
+    }
+
+    public long getAverageLatencyMs() {
+        long count = requestCount.get();
+        return count == 0 ? 0 : totalLatencyMs.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return "requests=" + getRequestCount()
+                + ", failures=" + getFailureCount()
+                + ", retries=" + getRetryCount()
+                + ", hedges=" + getHedgeCount()
+                + ", avgLatency=" + getAverageLatencyMs() + "ms";
+    }
+}
@@ -0,0 +1,143 @@
+package com.maibot.groupchat.network;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * 进程级HTTP传输层 - 由 MaiBotService 持有
+ * 所有机器人共享同一个连接池、调度线程和DNS/TLS缓存，
+ * 每个机器人通过 {@link #newClient(int, boolean)} 获得只覆盖超时设置的轻量视图
+ * 访问本机服务时走应用私有目录下的Unix域套接字，不占用TCP端口
+ * 同一端点的熔断器也在这里共享，一个机器人探测到服务失效后其他机器人不再发请求
+ */
+public class HttpTransport {
+
+    private static final String TAG = "HttpTransport";
+
+    // 连接池配置：所有机器人都连接同一个本地服务，保留足够的空闲连接避免冷启动
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    // 调度器配置：默认每个主机只允许5个并发请求，机器人多时会排队
+    private static final int MAX_REQUESTS = 64;
+    private static final int MAX_REQUESTS_PER_HOST = 32;
+
+    private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+
+    // 本地服务的Unix域套接字文件名（路径总长度需小于108字节）
+    private static final String LOCAL_SOCKET_NAME = "maibot.sock";
+
+    private final ConnectionPool connectionPool;
+    private final Dispatcher dispatcher;
+    private final OkHttpClient sharedClient;
+    // 所有本地视图共用同一个工厂实例，连接池才能按地址复用连接
+    private final LocalSocketFactory localSocketFactory;
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile CircuitBreaker.Listener circuitBreakerListener;
+
+    public HttpTransport(Context context) {
+        File socketFile = new File(context.getNoBackupFilesDir(), LOCAL_SOCKET_NAME);
+        this.localSocketFactory = new LocalSocketFactory(socketFile.getPath());
+        this.connectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+        this.dispatcher = new Dispatcher();
+        this.dispatcher.setMaxRequests(MAX_REQUESTS);
+        this.dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "http-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.sharedClient = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .connectTimeout(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+
+        Log.i(TAG, "Shared HTTP transport created");
+    }
+
+    /**
+     * 创建共享连接池的客户端视图，仅超时设置不同
+     *
+     * @param localServer 目标是否为本机服务，是则通过Unix域套接字连接
+     */
+    public OkHttpClient newClient(int timeoutSeconds, boolean localServer) {
+        OkHttpClient.Builder builder = sharedClient.newBuilder()
+                .connectTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .writeTimeout(timeoutSeconds, TimeUnit.SECONDS);
+        if (localServer) {
+            builder.socketFactory(localSocketFactory);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 本地服务需要绑定的套接字路径
+     */
+    public String getLocalSocketPath() {
+        return localSocketFactory.getSocketPath();
+    }
+
+    /**
+     * 获取端点（基础URL）对应的熔断器，同一端点的所有客户端视图共用一个
+     */
+    public CircuitBreaker getCircuitBreaker(String endpoint) {
+        return circuitBreakers.computeIfAbsent(endpoint, key -> new CircuitBreaker(key, (breakerEndpoint, state) -> {
+            CircuitBreaker.Listener listener = circuitBreakerListener;
+            if (listener != null) {
+                listener.onStateChanged(breakerEndpoint, state);
+            }
+        }));
+    }
+
+    public void setCircuitBreakerListener(CircuitBreaker.Listener listener) {
+        this.circuitBreakerListener = listener;
+    }
+
+    /**
+     * 异步请求的重试、对冲和超时共用的定时线程，只用来调度，不做耗时工作
+     */
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public int getConnectionCount() {
+        return connectionPool.connectionCount();
+    }
+
+    public int getIdleConnectionCount() {
+        return connectionPool.idleConnectionCount();
+    }
+
+    public int getRunningCallsCount() {
+        return dispatcher.runningCallsCount();
+    }
+
+    /**
+     * 关闭传输层，仅在服务销毁时调用
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        dispatcher.cancelAll();
+        dispatcher.executorService().shutdown();
+        connectionPool.evictAll();
+        Log.i(TAG, "Shared HTTP transport shut down");
+    }
+}
@@ -0,0 +1,218 @@
+package com.maibot.groupchat.network;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+/**
+ * 聊天协议的流式JSON编解码器，也是协商失败时的默认格式
+ * 请求直接写入 OkHttp 的 sink，响应直接从 source 流式读取需要的字段，不构建字符串和DOM树
+ * 流式响应为NDJSON，每行一个帧；整个响应共用一个宽松模式的 JsonReader 连续读取顶层对象，不按行切分
+ */
+final class JsonChatCodec implements ChatCodec {
+
+    static final JsonChatCodec INSTANCE = new JsonChatCodec();
+
+    static final MediaType MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+
+    private JsonChatCodec() {
+    }
+
+    @Override
+    public MediaType mediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public RequestBody encodeChat(String message) {
+        return new JsonBody() {
+            @Override
+            void write(JsonWriter writer) throws IOException {
+                writer.beginObject();
+                writer.name("message").value(message != null ? message : "");
+                writer.endObject();
+            }
+        };
+    }
+
+    @Override
+    public RequestBody encodeBatch(String message, List<String> botIds) {
+        return new JsonBody() {
+            @Override
+            void write(JsonWriter writer) throws IOException {
+                writer.beginObject();
+                writer.name("message").value(message != null ? message : "");
+                writer.name("bots").beginArray();
+                for (String botId : botIds) {
+                    writer.beginObject().name("bot_id").value(botId).endObject();
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+        };
+    }
+
+    /**
+     * 读取 /api/chat 响应中的 reply 字段，其他字段直接跳过
+     *
+     * @return 回复文本，响应中没有 reply 时返回 null
+     */
+    @Override
+    public String decodeReply(BufferedSource source) throws IOException {
+        JsonReader reader = newReader(source);
+        try {
+            String reply = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("reply".equals(reader.nextName())) {
+                    reply = nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return reply;
+        } catch (IllegalStateException | NumberFormatException | MalformedJsonException e) {
+            throw new MalformedPayloadException(e);
+        }
+    }
+
+    /**
+     * 读取 /api/chat/batch 响应，返回 机器人ID -> 回复文本
+     */
+    @Override
+    public Map<String, String> decodeBatchReplies(BufferedSource source) throws IOException {
+        JsonReader reader = newReader(source);
+        try {
+            Map<String, String> replies = new HashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"replies".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String botId = null;
+                    String reply = "";
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if ("bot_id".equals(name)) {
+                            botId = nextStringOrNull(reader);
+                        } else if ("reply".equals(name)) {
+                            String value = nextStringOrNull(reader);
+                            reply = value != null ? value : "";
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    if (botId != null) {
+                        replies.put(botId, reply);
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+            return replies;
+        } catch (IllegalStateException | NumberFormatException | MalformedJsonException e) {
+            throw new MalformedPayloadException(e);
+        }
+    }
+
+    @Override
+    public FrameReader newFrameReader(BufferedSource source) {
+        // 宽松模式允许同一个流中出现多个顶层值，行间的换行和空行按空白跳过
+        JsonReader reader = newReader(source);
+        reader.setLenient(true);
+        return frame -> readFrame(reader, frame);
+    }
+
+    /**
+     * 从NDJSON流中读取下一帧到 frame
+     *
+     * @return 流已结束时返回 false
+     */
+    private static boolean readFrame(JsonReader reader, StreamFrame frame) throws IOException {
+        try {
+            if (reader.peek() == JsonToken.END_DOCUMENT) {
+                return false;
+            }
+            frame.reset();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "type":
+                        frame.type = nextStringOrNull(reader);
+                        break;
+                    case "bot_id":
+                        frame.botId = nextStringOrNull(reader);
+                        break;
+                    case "text":
+                        frame.text = nextStringOrNull(reader);
+                        break;
+                    case "reply":
+                        frame.reply = nextStringOrNull(reader);
+                        break;
+                    case "error":
+                        frame.error = nextStringOrNull(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return true;
+        } catch (IllegalStateException | NumberFormatException | MalformedJsonException e) {
+            throw new MalformedPayloadException(e);
+        }
+    }
+
+    private static JsonReader newReader(BufferedSource source) {
+        return new JsonReader(new InputStreamReader(source.inputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * 由 JsonWriter 直接写入请求 sink 的请求体，长度未知时 OkHttp 使用分块传输
+     */
+    private abstract static class JsonBody extends RequestBody {
+
+        @Override
+        public MediaType contentType() {
+            return MEDIA_TYPE;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(sink.outputStream(), StandardCharsets.UTF_8));
+            write(writer);
+            writer.flush();
+        }
+
+        abstract void write(JsonWriter writer) throws IOException;
+    }
+}
@@ -0,0 +1,186 @@
+package com.maibot.groupchat.network;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+
+import javax.net.SocketFactory;
+
+/**
+ * Unix域套接字工厂 - 让 OkHttp 通过本地套接字文件访问本机 uvicorn，不经过TCP协议栈
+ * 套接字文件位于应用私有目录，其他应用无法连接
+ * OkHttp 传入的目标地址会被忽略，所有连接都指向同一个套接字文件
+ */
+public class LocalSocketFactory extends SocketFactory {
+
+    private final String socketPath;
+
+    public LocalSocketFactory(String socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    public String getSocketPath() {
+        return socketPath;
+    }
+
+    @Override
+    public Socket createSocket() {
+        return new LocalSocketAdapter(socketPath);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException {
+        return connected();
+    }
+
+    private Socket connected() throws IOException {
+        Socket socket = createSocket();
+        socket.connect(null);
+        return socket;
+    }
+
+    /**
+     * 将 LocalSocket 包装为 java.net.Socket，只实现 OkHttp 实际用到的方法
+     */
+    private static class LocalSocketAdapter extends Socket {
+
+        private final String socketPath;
+        private final LocalSocket localSocket = new LocalSocket();
+        private volatile boolean closed;
+        private boolean inputShutdown;
+        private boolean outputShutdown;
+
+        LocalSocketAdapter(String socketPath) {
+            this.socketPath = socketPath;
+        }
+
+        @Override
+        public void connect(SocketAddress endpoint) throws IOException {
+            try {
+                localSocket.connect(new LocalSocketAddress(socketPath, LocalSocketAddress.Namespace.FILESYSTEM));
+            } catch (IOException e) {
+                // 套接字文件不存在或无人监听，与TCP连接被拒绝同样处理
+                ConnectException connectException = new ConnectException("Failed to connect to " + socketPath);
+                connectException.initCause(e);
+                throw connectException;
+            }
+        }
+
+        @Override
+        public void connect(SocketAddress endpoint, int timeout) throws IOException {
+            // LocalSocket 不支持连接超时，本地连接要么立即成功要么立即失败
+            connect(endpoint);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return localSocket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return localSocket.getOutputStream();
+        }
+
+        @Override
+        public void setSoTimeout(int timeout) throws SocketException {
+            try {
+                localSocket.setSoTimeout(timeout);
+            } catch (IOException e) {
+                throw new SocketException(e.getMessage());
+            }
+        }
+
+        @Override
+        public int getSoTimeout() throws SocketException {
+            try {
+                return localSocket.getSoTimeout();
+            } catch (IOException e) {
+                throw new SocketException(e.getMessage());
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            closed = true;
+            localSocket.close();
+        }
+
+        @Override
+        public void shutdownInput() throws IOException {
+            inputShutdown = true;
+            localSocket.shutdownInput();
+        }
+
+        @Override
+        public void shutdownOutput() throws IOException {
+            outputShutdown = true;
+            localSocket.shutdownOutput();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return localSocket.isConnected();
+        }
+
+        @Override
+        public boolean isBound() {
+            return localSocket.isBound();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public boolean isInputShutdown() {
+            return inputShutdown;
+        }
+
+        @Override
+        public boolean isOutputShutdown() {
+            return outputShutdown;
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public SocketAddress getRemoteSocketAddress() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        }
+
+        @Override
+        public String toString() {
+            return "LocalSocketAdapter[" + socketPath + "]";
+        }
+    }
+}
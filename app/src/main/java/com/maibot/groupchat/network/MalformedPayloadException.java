@@ -0,0 +1,15 @@
+package com.maibot.groupchat.network;
+
+import java.io.IOException;
+
+/**
+ * 响应内容不符合聊天协议（格式错误或字段类型不对），与网络错误区分开
+ */
+class MalformedPayloadException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    MalformedPayloadException(Throwable cause) {
+        super(cause.getMessage(), cause);
+    }
+}
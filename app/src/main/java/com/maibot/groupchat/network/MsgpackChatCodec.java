@@ -0,0 +1,190 @@
+package com.maibot.groupchat.network;
+
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+/**
+ * 聊天协议的MessagePack编解码器，字段结构与JSON格式完全一致
+ * 省去了文本转义和数字/字符串的文本解析，在低端设备上编解码更省CPU
+ * 流式响应直接拼接多个MessagePack对象，每个对象自带长度，不需要分隔符
+ */
+final class MsgpackChatCodec implements ChatCodec {
+
+    static final MsgpackChatCodec INSTANCE = new MsgpackChatCodec();
+
+    static final MediaType MEDIA_TYPE = MediaType.parse("application/x-msgpack");
+
+    private MsgpackChatCodec() {
+    }
+
+    @Override
+    public MediaType mediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public RequestBody encodeChat(String message) {
+        return new MsgpackBody() {
+            @Override
+            void write(MessagePacker packer) throws IOException {
+                packer.packMapHeader(1);
+                packer.packString("message").packString(message != null ? message : "");
+            }
+        };
+    }
+
+    @Override
+    public RequestBody encodeBatch(String message, List<String> botIds) {
+        return new MsgpackBody() {
+            @Override
+            void write(MessagePacker packer) throws IOException {
+                packer.packMapHeader(2);
+                packer.packString("message").packString(message != null ? message : "");
+                packer.packString("bots").packArrayHeader(botIds.size());
+                for (String botId : botIds) {
+                    packer.packMapHeader(1);
+                    packer.packString("bot_id").packString(botId);
+                }
+            }
+        };
+    }
+
+    @Override
+    public String decodeReply(BufferedSource source) throws IOException {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(source.inputStream())) {
+            String reply = null;
+            int fields = unpacker.unpackMapHeader();
+            for (int i = 0; i < fields; i++) {
+                if ("reply".equals(unpacker.unpackString())) {
+                    reply = unpackStringOrNull(unpacker);
+                } else {
+                    unpacker.skipValue();
+                }
+            }
+            return reply;
+        } catch (MessagePackException e) {
+            throw new MalformedPayloadException(e);
+        }
+    }
+
+    @Override
+    public Map<String, String> decodeBatchReplies(BufferedSource source) throws IOException {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(source.inputStream())) {
+            Map<String, String> replies = new HashMap<>();
+            int fields = unpacker.unpackMapHeader();
+            for (int i = 0; i < fields; i++) {
+                if (!"replies".equals(unpacker.unpackString())
+                        || unpacker.getNextFormat().getValueType() != ValueType.ARRAY) {
+                    unpacker.skipValue();
+                    continue;
+                }
+                int count = unpacker.unpackArrayHeader();
+                for (int j = 0; j < count; j++) {
+                    String botId = null;
+                    String reply = "";
+                    int replyFields = unpacker.unpackMapHeader();
+                    for (int k = 0; k < replyFields; k++) {
+                        String name = unpacker.unpackString();
+                        if ("bot_id".equals(name)) {
+                            botId = unpackStringOrNull(unpacker);
+                        } else if ("reply".equals(name)) {
+                            String value = unpackStringOrNull(unpacker);
+                            reply = value != null ? value : "";
+                        } else {
+                            unpacker.skipValue();
+                        }
+                    }
+                    if (botId != null) {
+                        replies.put(botId, reply);
+                    }
+                }
+            }
+            return replies;
+        } catch (MessagePackException e) {
+            throw new MalformedPayloadException(e);
+        }
+    }
+
+    @Override
+    public FrameReader newFrameReader(BufferedSource source) {
+        // 解包器自带读缓冲，整个响应共用一个，帧之间不会丢失已读入的字节
+        MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(source.inputStream());
+        return frame -> readFrame(unpacker, frame);
+    }
+
+    private static boolean readFrame(MessageUnpacker unpacker, StreamFrame frame) throws IOException {
+        try {
+            if (!unpacker.hasNext()) {
+                return false;
+            }
+            frame.reset();
+            int fields = unpacker.unpackMapHeader();
+            for (int i = 0; i < fields; i++) {
+                switch (unpacker.unpackString()) {
+                    case "type":
+                        frame.type = unpackStringOrNull(unpacker);
+                        break;
+                    case "bot_id":
+                        frame.botId = unpackStringOrNull(unpacker);
+                        break;
+                    case "text":
+                        frame.text = unpackStringOrNull(unpacker);
+                        break;
+                    case "reply":
+                        frame.reply = unpackStringOrNull(unpacker);
+                        break;
+                    case "error":
+                        frame.error = unpackStringOrNull(unpacker);
+                        break;
+                    default:
+                        unpacker.skipValue();
+                        break;
+                }
+            }
+            return true;
+        } catch (MessagePackException e) {
+            throw new MalformedPayloadException(e);
+        }
+    }
+
+    private static String unpackStringOrNull(MessageUnpacker unpacker) throws IOException {
+        if (unpacker.getNextFormat().getValueType() == ValueType.NIL) {
+            unpacker.unpackNil();
+            return null;
+        }
+        return unpacker.unpackString();
+    }
+
+    /**
+     * 由 MessagePacker 直接写入请求 sink 的请求体
+     */
+    private abstract static class MsgpackBody extends RequestBody {
+
+        @Override
+        public MediaType contentType() {
+            return MEDIA_TYPE;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            MessagePacker packer = MessagePack.newDefaultPacker(sink.outputStream());
+            write(packer);
+            packer.flush();
+        }
+
+        abstract void write(MessagePacker packer) throws IOException;
+    }
+}
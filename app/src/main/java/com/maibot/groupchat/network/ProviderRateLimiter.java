@@ -0,0 +1,140 @@
+package com.maibot.groupchat.network;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.maibot.groupchat.utils.SecureConfigManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 按API提供商限速 - 所有机器人共用同一个提供商的请求数和token额度
+ * 额度由用户在配置中填写，未填写（0）时不限速
+ * 每个提供商有请求令牌桶和token令牌桶，桶容量够约10秒的突发，
+ * 超出部分按速率排队：reserve 立即占用额度并返回需要等待的时间，
+ * 同时到达的多个机器人因此被错开，发送速率稳定在额度附近，而不是集中触发429后再退避
+ */
+public class ProviderRateLimiter {
+
+    private static final String TAG = "ProviderRateLimiter";
+
+    // 桶容量对应的突发时长，一次群发的所有机器人通常都能立即发出
+    private static final long BURST_MS = 10000;
+
+    // 估算token：服务端会附加人设和聊天上下文，回复长度也计入额度
+    private static final int PROMPT_OVERHEAD_TOKENS = 500;
+    private static final int EXPECTED_COMPLETION_TOKENS = 300;
+
+    private final Supplier<String> providerSource;
+    private final IntSupplier requestsPerMinute;
+    private final IntSupplier tokensPerMinute;
+    private final LongSupplier clock;
+    private final Map<String, ProviderLimit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * 每次占用额度时读取当前提供商和额度，修改配置后立即生效
+     */
+    public ProviderRateLimiter(SecureConfigManager configManager) {
+        this(configManager::getApiProvider, configManager::getRateLimitRequestsPerMinute,
+                configManager::getRateLimitTokensPerMinute, SystemClock::elapsedRealtime);
+    }
+
+    // 单元测试直接指定额度和时钟
+    ProviderRateLimiter(Supplier<String> providerSource, IntSupplier requestsPerMinute,
+                        IntSupplier tokensPerMinute, LongSupplier clock) {
+        this.providerSource = providerSource;
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.clock = clock;
+    }
+
+    /**
+     * 为即将发出的模型调用占用额度
+     *
+     * @param requests 模型调用次数，批量请求中每个机器人各调用一次
+     * @param tokens   估算的token总数
+     * @return 需要等待的毫秒数，0 表示可以立即发送
+     */
+    public long reserve(int requests, int tokens) {
+        int rpm = requestsPerMinute.getAsInt();
+        int tpm = tokensPerMinute.getAsInt();
+        if (rpm <= 0 && tpm <= 0) {
+            return 0;
+        }
+        String provider = providerSource.get();
+        // 额度改变后重新开始计算
+        ProviderLimit limit = limits.compute(provider, (key, old) ->
+                old != null && old.matches(rpm, tpm) ? old : new ProviderLimit(rpm, tpm, clock.getAsLong()));
+        long waitMs = limit.reserve(requests, tokens, clock.getAsLong());
+        if (waitMs > 0) {
+            Log.d(TAG, "Pacing " + requests + " request(s) to " + provider + " by " + waitMs + "ms");
+        }
+        return waitMs;
+    }
+
+    /**
+     * 估算一次回复消耗的token数，中文按每字一个token估算
+     */
+    public static int estimateTokens(String message) {
+        int length = message != null ? message.length() : 0;
+        return PROMPT_OVERHEAD_TOKENS + EXPECTED_COMPLETION_TOKENS + length;
+    }
+
+    private static final class ProviderLimit {
+        private final int requestsPerMinute;
+        private final int tokensPerMinute;
+        // 为 null 时该项不限
+        private final TokenBucket requests;
+        private final TokenBucket tokens;
+
+        ProviderLimit(int requestsPerMinute, int tokensPerMinute, long now) {
+            this.requestsPerMinute = requestsPerMinute;
+            this.tokensPerMinute = tokensPerMinute;
+            this.requests = requestsPerMinute > 0 ? new TokenBucket(requestsPerMinute, now) : null;
+            this.tokens = tokensPerMinute > 0 ? new TokenBucket(tokensPerMinute, now) : null;
+        }
+
+        boolean matches(int requestsPerMinute, int tokensPerMinute) {
+            return this.requestsPerMinute == requestsPerMinute && this.tokensPerMinute == tokensPerMinute;
+        }
+
+        synchronized long reserve(int requestCount, int tokenCount, long now) {
+            long waitMs = 0;
+            if (requests != null) {
+                waitMs = requests.reserve(requestCount, now);
+            }
+            if (tokens != null) {
+                waitMs = Math.max(waitMs, tokens.reserve(tokenCount, now));
+            }
+            return waitMs;
+        }
+    }
+
+    /**
+     * 令牌桶，允许透支：透支的额度按补充速率折算为等待时间
+     */
+    private static final class TokenBucket {
+        private final double perMs;
+        private final double capacity;
+        private double available;
+        private long lastRefill;
+
+        TokenBucket(int perMinute, long now) {
+            this.perMs = perMinute / 60000.0;
+            this.capacity = Math.max(1, perMs * BURST_MS);
+            this.available = capacity;
+            this.lastRefill = now;
+        }
+
+        long reserve(int amount, long now) {
+            available = Math.min(capacity, available + (now - lastRefill) * perMs);
+            lastRefill = now;
+            available -= amount;
+            return available >= 0 ? 0 : (long) Math.ceil(-available / perMs);
+        }
+    }
+}
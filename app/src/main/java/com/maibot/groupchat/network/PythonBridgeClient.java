@@ -0,0 +1,177 @@
+package com.maibot.groupchat.network;
+
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.chaquo.python.PyObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 进程内Python桥接通道 - 通过 PyObject 直接调用 maibot_android.chat_direct，
+ * 绕过 JSON → OkHttp → 本地TCP → uvicorn → FastAPI 的整条链路
+ * 所有 PyObject 调用都在专用桥接线程上执行，结果由Python事件循环通过回调返回
+ * 取消时调用 chat_direct 返回的 Future.cancel()，在事件循环中取消协程及其上游模型请求
+ */
+public class PythonBridgeClient implements ChatTransport {
+
+    private static final String TAG = "PythonBridgeClient";
+
+    // 单个回复请求使用的机器人ID
+    private static final String DEFAULT_BOT_ID = "default";
+
+    private final PyObject maibotModule;
+    private final ScheduledExecutorService bridgeExecutor;
+    private final ClientStats stats = new ClientStats();
+
+    public PythonBridgeClient(PyObject maibotModule) {
+        this.maibotModule = maibotModule;
+        this.bridgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "python-bridge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> getReplyAsync(String message, StreamListener listener, long timeoutMs,
+                                                   Executor executor) {
+        AsyncReply reply = new AsyncReply(executor);
+        StreamListener watched;
+        if (listener != null) {
+            watched = reply.watchIdle(bridgeExecutor, timeoutMs, listener);
+        } else {
+            watched = null;
+            reply.scheduleTimeout(bridgeExecutor, timeoutMs);
+        }
+        submit(message, Collections.singletonList(DEFAULT_BOT_ID), listener != null, new BatchStreamListener() {
+            @Override
+            public void onPartial(String botId, CharSequence text) {
+                watched.onPartial(text);
+            }
+
+            @Override
+            public void onReply(String botId, String text) {
+                reply.complete(text);
+            }
+        }, reply.signal);
+        return reply.future;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getBatchReplies(String message, List<String> botIds,
+                                                                 CancellationSignal signal) {
+        CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+        Map<String, String> replies = new HashMap<>();
+        submit(message, botIds, false, new BatchStreamListener() {
+            @Override
+            public void onPartial(String botId, CharSequence text) {
+            }
+
+            @Override
+            public void onReply(String botId, String reply) {
+                synchronized (replies) {
+                    replies.put(botId, reply);
+                    if (replies.size() >= botIds.size()) {
+                        future.complete(new HashMap<>(replies));
+                    }
+                }
+            }
+        }, signal);
+        return future;
+    }
+
+    @Override
+    public void streamBatchReplies(String message, List<String> botIds, BatchStreamListener listener,
+                                   CancellationSignal signal) {
+        submit(message, botIds, true, listener, signal);
+    }
+
+    private void submit(String message, List<String> botIds, boolean stream, BatchStreamListener listener,
+                        CancellationSignal signal) {
+        long startTime = System.currentTimeMillis();
+        // 尚未收到回复的机器人，保证每个机器人的 onReply 只回调一次
+        Set<String> pending = new HashSet<>(botIds);
+        BatchStreamListener timedListener = new BatchStreamListener() {
+            @Override
+            public void onPartial(String botId, CharSequence text) {
+                listener.onPartial(botId, text);
+            }
+
+            @Override
+            public void onReply(String botId, String reply) {
+                synchronized (pending) {
+                    if (!pending.remove(botId)) {
+                        return;
+                    }
+                }
+                stats.recordSuccess(System.currentTimeMillis() - startTime);
+                listener.onReply(botId, reply);
+            }
+        };
+
+        bridgeExecutor.execute(() -> {
+            if (signal != null && signal.isCanceled()) {
+                completeRemaining(pending, listener, null);
+                return;
+            }
+            try {
+                PyObject handle = maibotModule.callAttr("chat_direct", message != null ? message : "",
+                        botIds.toArray(new String[0]), stream, timedListener);
+                if (signal != null) {
+                    signal.setOnCancelListener(() -> {
+                        Log.d(TAG, "Cancelling bridge request");
+                        bridgeExecutor.execute(() -> handle.callAttr("cancel"));
+                        completeRemaining(pending, listener, null);
+                    });
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Python bridge call failed", e);
+                stats.recordFailure(System.currentTimeMillis() - startTime);
+                completeRemaining(pending, listener, "服务未启动，请稍后重试");
+            }
+        });
+    }
+
+    private static void completeRemaining(Set<String> pending, BatchStreamListener listener, String reply) {
+        List<String> remaining;
+        synchronized (pending) {
+            remaining = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (String botId : remaining) {
+            listener.onReply(botId, reply);
+        }
+    }
+
+    @Override
+    public boolean checkHealth() {
+        try {
+            return CompletableFuture
+                    .supplyAsync(() -> maibotModule.callAttr("is_bridge_ready").toBoolean(), bridgeExecutor)
+                    .get();
+        } catch (Exception e) {
+            Log.e(TAG, "Bridge health check failed", e);
+            return false;
+        }
+    }
+
+    @Override
+    public ClientStats getStats() {
+        return stats;
+    }
+
+    public void shutdown() {
+        bridgeExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,42 @@
+package com.maibot.groupchat.network;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 重试策略 - 只重试确定没有被服务端处理的失败，退避时间使用全抖动指数退避，
+ * 避免多个机器人在同一时刻一起重试
+ */
+final class RetryPolicy {
+
+    static final int MAX_RETRIES = 2;
+
+    private static final long BASE_DELAY_MS = 200;
+    private static final long MAX_DELAY_MS = 2000;
+
+    private RetryPolicy() {
+    }
+
+    /**
+     * 连接没有建立时请求一定没有到达服务端，可以安全重试；超时可能已在生成回复，不重试
+     */
+    static boolean isRetryable(IOException e) {
+        return e instanceof ConnectException;
+    }
+
+    /**
+     * 网关错误和服务暂不可用说明请求没有被处理
+     */
+    static boolean isRetryable(int statusCode) {
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * 第 attempt 次重试前的等待时间，取 [0, min(上限, 基数 * 2^attempt)) 内的随机值
+     */
+    static long backoffDelayMs(int attempt) {
+        long ceiling = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << Math.min(attempt, 10));
+        return ThreadLocalRandom.current().nextLong(ceiling);
+    }
+}
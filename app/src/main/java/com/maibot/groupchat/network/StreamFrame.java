@@ -0,0 +1,25 @@
+package com.maibot.groupchat.network;
+
+/**
+ * 流式响应中的一个帧，解码时复用同一个实例以减少分配
+ */
+final class StreamFrame {
+
+    static final String TYPE_DELTA = "delta";
+    static final String TYPE_DONE = "done";
+    static final String TYPE_ERROR = "error";
+
+    String type;
+    String botId;
+    String text;
+    String reply;
+    String error;
+
+    void reset() {
+        type = null;
+        botId = null;
+        text = null;
+        reply = null;
+        error = null;
+    }
+}
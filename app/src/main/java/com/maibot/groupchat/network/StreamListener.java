@@ -0,0 +1,15 @@
+package com.maibot.groupchat.network;
+
+/**
+ * 流式回复监听器 - 在请求线程或网络线程上回调
+ */
+public interface StreamListener {
+
+    /**
+     * 收到新的回复片段
+     *
+     * @param text 目前为止累计的回复文本，只在回调期间有效（读取方会继续向其追加），
+     *             需要保留时调用 toString()
+     */
+    void onPartial(CharSequence text);
+}
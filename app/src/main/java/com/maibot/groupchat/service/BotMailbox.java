@@ -0,0 +1,120 @@
+package com.maibot.groupchat.service;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+/**
+ * 机器人的消息信箱 - 机器人正在回复时，新消息按策略排队、合并或丢弃
+ * 信箱有容量上限；记录排队深度和消息从进入信箱到开始处理的等待时间
+ * 所有方法都在调用方持有的锁内使用
+ */
+public final class BotMailbox {
+
+    private static final String TAG = "BotMailbox";
+
+    static final int CAPACITY = 8;
+
+    // 合并多条消息时使用的分隔符
+    private static final String COALESCE_SEPARATOR = "\n";
+
+    public enum Policy {
+        // 按顺序逐条回复
+        QUEUE,
+        // 把排队的消息合并成一条，回复完当前消息后一次性处理
+        COALESCE,
+        // 取消正在进行的回复，只回复最新的消息
+        LATEST_WINS,
+        // 正在回复时丢弃新消息
+        DROP_WHEN_BUSY;
+
+        static Policy parse(String value) {
+            if (value != null) {
+                try {
+                    return valueOf(value);
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Unknown mailbox policy: " + value);
+                }
+            }
+            return LATEST_WINS;
+        }
+    }
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long waitedCount;
+    private long totalWaitMs;
+    private long lastWaitMs;
+
+    /**
+     * 放入一条等待处理的消息
+     *
+     * @return 信箱已满且无法合并时返回 false
+     */
+    boolean offer(String message, Policy policy) {
+        if (policy == Policy.COALESCE && !entries.isEmpty()) {
+            entries.peekLast().append(message);
+            return true;
+        }
+        if (entries.size() >= CAPACITY) {
+            return false;
+        }
+        entries.addLast(new Entry(message));
+        return true;
+    }
+
+    /**
+     * 取出下一条要处理的消息，信箱为空时返回 null
+     */
+    String poll() {
+        Entry entry = entries.pollFirst();
+        if (entry == null) {
+            return null;
+        }
+        lastWaitMs = System.currentTimeMillis() - entry.enqueueTime;
+        totalWaitMs += lastWaitMs;
+        waitedCount++;
+        return entry.text.toString();
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * 等待处理的条目数，即还会产生的回复数；合并的消息算作一条
+     */
+    int entryCount() {
+        return entries.size();
+    }
+
+    int size() {
+        int size = 0;
+        for (Entry entry : entries) {
+            size += entry.messageCount;
+        }
+        return size;
+    }
+
+    long getLastWaitMs() {
+        return lastWaitMs;
+    }
+
+    long getAverageWaitMs() {
+        return waitedCount == 0 ? 0 : totalWaitMs / waitedCount;
+    }
+
+    private static final class Entry {
+        final StringBuilder text;
+        final long enqueueTime = System.currentTimeMillis();
+        int messageCount = 1;
+
+        Entry(String message) {
+            this.text = new StringBuilder(message);
+        }
+
+        void append(String message) {
+            text.append(COALESCE_SEPARATOR).append(message);
+            messageCount++;
+        }
+    }
+}
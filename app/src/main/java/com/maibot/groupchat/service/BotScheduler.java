@@ -0,0 +1,249 @@
+package com.maibot.groupchat.service;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务内所有机器人共享的调度器
+ * 工作线程数固定，按CPU核数确定；设备发热时降低同时运行的任务数，但不增减线程
+ * 每个机器人（或服务自身）有独立的任务队列，工作线程在各队列之间轮转取任务，
+ * 一个机器人堆积的任务不会饿死其他机器人
+ * 新任务通过 trySubmit 提交，排队总数达到上限时拒绝，由调用方决定如何告知用户
+ */
+public final class BotScheduler {
+
+    private static final String TAG = "BotScheduler";
+
+    private static final int MIN_WORKERS = 2;
+    private static final int MAX_WORKERS = 4;
+    private static final int QUEUE_CAPACITY = 64;
+    // 热余量达到该值（1.0 为开始降频）时按发热处理
+    private static final float THERMAL_HEADROOM_THROTTLE = 0.9f;
+
+    private final Object lock = new Object();
+    private final Map<String, ArrayDeque<Runnable>> queues = new HashMap<>();
+    // 有待执行任务且当前没有任务在运行的队列，按轮转顺序排列
+    private final ArrayDeque<String> readyKeys = new ArrayDeque<>();
+    // 有任务正在运行的队列，同一 key 同时只运行一个任务，运行结束后才重新排入轮转
+    private final Set<String> runningKeys = new HashSet<>();
+    private final Thread[] workers;
+    // 只负责到期后把延迟任务放入队列，任务本身仍在工作线程上执行
+    private final ScheduledExecutorService timer;
+    private final int capacity;
+    private final PowerManager powerManager;
+    private Object thermalListener;
+    private int queuedCount;
+    private int runningCount;
+    private int activeLimit;
+    private boolean shutdown;
+
+    public BotScheduler(Context context) {
+        this(context, workerCountForCores(Runtime.getRuntime().availableProcessors()), QUEUE_CAPACITY);
+    }
+
+    // 单元测试直接指定线程数和队列上限，context 为 null 时不监听发热状态
+    BotScheduler(Context context, int workerCount, int capacity) {
+        this.capacity = capacity;
+        this.powerManager = context != null
+                ? (PowerManager) context.getSystemService(Context.POWER_SERVICE)
+                : null;
+        this.workers = new Thread[workerCount];
+        this.activeLimit = workerCount;
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::runWorker, "bot-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bot-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchThermalStatus();
+        Log.i(TAG, "Started " + workerCount + " workers, queue capacity " + capacity);
+    }
+
+    private static int workerCountForCores(int cores) {
+        // 机器人的工作主要是等待网络和Python，线程只做编码、解析和广播，核数的一半足够
+        return Math.max(MIN_WORKERS, Math.min(MAX_WORKERS, cores / 2));
+    }
+
+    /**
+     * 提交新任务
+     *
+     * @param key 任务所属的机器人名称，同一 key 的任务按提交顺序执行
+     * @return 队列已满或调度器已关闭时返回 false，任务不会执行
+     */
+    public boolean trySubmit(String key, Runnable task) {
+        synchronized (lock) {
+            if (shutdown || queuedCount >= capacity) {
+                return false;
+            }
+            enqueueLocked(key, task);
+            return true;
+        }
+    }
+
+    /**
+     * 返回在指定 key 的队列上执行的 Executor，用于已经接受的请求的后续回调，
+     * 这类任务不受队列上限限制，否则已完成的回复会被丢弃
+     */
+    public Executor executorFor(String key) {
+        return task -> {
+            synchronized (lock) {
+                if (shutdown) {
+                    Log.w(TAG, "Scheduler shut down, dropping callback for " + key);
+                    return;
+                }
+                enqueueLocked(key, task);
+            }
+        };
+    }
+
+    /**
+     * 延迟 delayMs 后在指定 key 的队列上执行已经接受的任务，同样不受队列上限限制
+     */
+    public void schedule(String key, Runnable task, long delayMs) {
+        Executor executor = executorFor(key);
+        synchronized (lock) {
+            if (shutdown) {
+                return;
+            }
+            timer.schedule(() -> executor.execute(task), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void enqueueLocked(String key, Runnable task) {
+        ArrayDeque<Runnable> queue = queues.get(key);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            queues.put(key, queue);
+        }
+        if (queue.isEmpty() && !runningKeys.contains(key)) {
+            readyKeys.addLast(key);
+        }
+        queue.addLast(task);
+        queuedCount++;
+        lock.notify();
+    }
+
+    private void runWorker() {
+        while (true) {
+            String key;
+            Runnable task;
+            synchronized (lock) {
+                while (!shutdown && (readyKeys.isEmpty() || runningCount >= activeLimit)) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (shutdown) {
+                    return;
+                }
+                key = readyKeys.pollFirst();
+                task = pollLocked(key);
+                runningCount++;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Task failed", e);
+            } finally {
+                synchronized (lock) {
+                    runningCount--;
+                    runningKeys.remove(key);
+                    // 运行期间又有同一 key 的任务排队时，排到轮转末尾
+                    ArrayDeque<Runnable> queue = queues.get(key);
+                    if (queue != null && !queue.isEmpty()) {
+                        readyKeys.addLast(key);
+                    }
+                    lock.notify();
+                }
+            }
+        }
+    }
+
+    // 从轮转顺序中取出的队列取一个任务，任务结束前该队列不再参与轮转
+    private Runnable pollLocked(String key) {
+        ArrayDeque<Runnable> queue = queues.get(key);
+        Runnable task = queue.pollFirst();
+        queuedCount--;
+        if (queue.isEmpty()) {
+            queues.remove(key);
+        }
+        runningKeys.add(key);
+        return task;
+    }
+
+    private void watchThermalStatus() {
+        if (powerManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return;
+        }
+        PowerManager.OnThermalStatusChangedListener listener = status -> updateActiveLimit();
+        thermalListener = listener;
+        powerManager.addThermalStatusListener(listener);
+        updateActiveLimit();
+    }
+
+    private void updateActiveLimit() {
+        int limit = isThermalThrottled() ? Math.max(1, workers.length / 2) : workers.length;
+        synchronized (lock) {
+            if (limit != activeLimit) {
+                Log.i(TAG, "Active worker limit " + activeLimit + " -> " + limit);
+                activeLimit = limit;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private boolean isThermalThrottled() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            float headroom = powerManager.getThermalHeadroom(10);
+            if (!Float.isNaN(headroom) && headroom >= THERMAL_HEADROOM_THROTTLE) {
+                return true;
+            }
+        }
+        return powerManager.getCurrentThermalStatus() >= PowerManager.THERMAL_STATUS_MODERATE;
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queuedCount;
+        }
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            queues.clear();
+            readyKeys.clear();
+            queuedCount = 0;
+            lock.notifyAll();
+        }
+        if (thermalListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            powerManager.removeThermalStatusListener((PowerManager.OnThermalStatusChangedListener) thermalListener);
+        }
+        timer.shutdownNow();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+}
@@ -1,34 +1,67 @@
 package com.maibot.groupchat.service;
 
 import android.content.Context;
-import android.content.Intent;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.maibot.groupchat.network.ApiClient;
+import com.maibot.groupchat.network.BatchDispatcher;
+import com.maibot.groupchat.network.ChatTransport;
+import com.maibot.groupchat.network.ClientStats;
+import com.maibot.groupchat.network.ProviderRateLimiter;
+import com.maibot.groupchat.network.StreamListener;
+import com.maibot.groupchat.startup.StartupTrace;
 import com.maibot.groupchat.utils.ConfigManager;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * 机器人实例 - 平时只是一个轻量的描述（名称、信箱、配置），
+ * 聊天通道在第一次收到消息时创建，空闲超过期限后由服务释放
+ */
 public class MaiBotInstance {
 
     private static final String TAG = "MaiBotInstance";
-    private static final long MESSAGE_TIMEOUT_MS = 30000; // 30秒超时
+    private static final long MESSAGE_TIMEOUT_MS = 30000; // 30秒超时，流式回复为片段间的空闲超时
+    private static final long STREAM_UPDATE_INTERVAL_MS = 50; // 流式片段广播的最小间隔
+
+    // 回复任务编号，界面据此区分同一机器人的新旧回复
+    private static final AtomicLong NEXT_TASK_ID = new AtomicLong(1);
 
     private Context context;
     private String name;
-    private ApiClient apiClient;
+    private final Supplier<ChatTransport> transportFactory;
+    // 激活后才创建，释放后为 null；由 mailbox 锁保护
+    private volatile ChatTransport transport;
+    private long lastActiveTime;
+    // 由 mailbox 锁保护，destroy() 后为 null
+    private BatchDispatcher batchDispatcher;
     private ConfigManager configManager;
-    private ExecutorService executorService;
-    private Future<?> currentTask;
+    // 任务和回调都在服务共享的调度器上执行，等待回复期间不占用线程
+    private final BotScheduler scheduler;
+    private final Executor callbackExecutor;
+    private final ProviderRateLimiter rateLimiter;
+    private volatile MessageTask activeTask;
+    // 正在回复时到达的消息，activeTask 的切换也在该锁内进行
+    private final BotMailbox mailbox = new BotMailbox();
+    // 已从机器人池移除，不再接受新消息，当前回复完成后释放
+    private boolean retired;
 
-    public MaiBotInstance(Context context, String name) {
+    public MaiBotInstance(Context context, String name, Supplier<ChatTransport> transportFactory,
+                          BatchDispatcher batchDispatcher, BotScheduler scheduler, ProviderRateLimiter rateLimiter) {
         this.context = context.getApplicationContext();
         this.name = name;
         this.configManager = new ConfigManager(context);
-        this.apiClient = new ApiClient(context);
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.transportFactory = transportFactory;
+        this.batchDispatcher = batchDispatcher;
+        this.scheduler = scheduler;
+        this.callbackExecutor = scheduler.executorFor(name);
+        this.rateLimiter = rateLimiter;
 
         Log.i(TAG, "Created bot instance: " + name);
     }
@@ -41,82 +74,318 @@ public class MaiBotInstance {
 
         Log.d(TAG, "Sending message to " + name + ": " + message);
 
-        // 取消之前的任务（如果有）
-        if (currentTask != null && !currentTask.isDone()) {
-            currentTask.cancel(true);
-            Log.d(TAG, "Cancelled previous task for " + name);
+        synchronized (mailbox) {
+            if (retired) {
+                Log.w(TAG, name + " has been removed, ignoring message");
+                return;
+            }
+            // destroy() 会清空 configManager，必须在确认未移除之后读取
+            BotMailbox.Policy policy = getMailboxPolicy();
+            activate();
+            MessageTask task = activeTask;
+            if (task != null && !task.isDone()) {
+                switch (policy) {
+                    case DROP_WHEN_BUSY:
+                        Log.d(TAG, name + " is busy, dropping message");
+                        publishReply(ReplyEvent.TYPE_SKIPPED, null, 0);
+                        return;
+                    case QUEUE:
+                    case COALESCE:
+                        offerToMailbox(message, policy);
+                        return;
+                    default:
+                        // 取消之前的任务，连同其正在进行的请求一起中止
+                        mailbox.clear();
+                        cancelActiveTask();
+                        break;
+                }
+            } else if (mailbox.size() > 0) {
+                // 上一条消息提交失败时信箱里还有消息，先处理更早的
+                offerToMailbox(message, policy);
+                message = mailbox.poll();
+            }
+            startTask(message);
         }
+    }
 
-        // 提交新任务
-        currentTask = executorService.submit(new MessageTask(message));
+    // 放入信箱，已满时告知用户；合并到已有条目时这条消息不会单独回复，也告知界面
+    private void offerToMailbox(String message, BotMailbox.Policy policy) {
+        int entries = mailbox.entryCount();
+        if (!mailbox.offer(message, policy)) {
+            Log.w(TAG, "Mailbox full, rejecting message for " + name);
+            publishReply(ReplyEvent.TYPE_ERROR, "当前消息过多，请稍后再试。", 0);
+        } else if (mailbox.entryCount() == entries) {
+            publishReply(ReplyEvent.TYPE_SKIPPED, null, 0);
+        }
+    }
+
+    // 交给调度器发出新请求，调度队列已满时直接告知用户
+    private void startTask(String message) {
+        MessageTask task = new MessageTask(message);
+        activeTask = task;
+        if (!scheduler.trySubmit(name, task::start)) {
+            Log.w(TAG, "Scheduler queue full, rejecting message for " + name);
+            task.cancel();
+            publishReply(ReplyEvent.TYPE_ERROR, "当前消息过多，请稍后再试。", 0);
+        }
     }
 
-    private class MessageTask implements Runnable {
+    // 当前消息回复完毕后处理信箱中的下一条
+    private void startNext(MessageTask finished) {
+        boolean release;
+        synchronized (mailbox) {
+            if (activeTask != finished) {
+                return;
+            }
+            release = retired;
+            lastActiveTime = SystemClock.elapsedRealtime();
+            String next = mailbox.poll();
+            if (next != null) {
+                Log.d(TAG, "Processing queued message for " + name + " after waiting "
+                        + mailbox.getLastWaitMs() + "ms");
+                startTask(next);
+            }
+        }
+        if (release) {
+            destroy();
+        }
+    }
+
+    /**
+     * 从机器人池中移除：不再接受新消息并丢弃排队的消息，正在进行的回复照常完成后再释放资源
+     */
+    public void retire() {
+        boolean idle;
+        synchronized (mailbox) {
+            retired = true;
+            mailbox.clear();
+            idle = !isProcessing();
+        }
+        Log.i(TAG, "Retiring bot instance: " + name + (idle ? "" : " after current reply"));
+        if (idle) {
+            destroy();
+        }
+    }
+
+    // 第一次收到消息（或释放后再次收到消息）时创建聊天通道
+    private void activate() {
+        lastActiveTime = SystemClock.elapsedRealtime();
+        if (transport == null) {
+            transport = transportFactory.get();
+            Log.i(TAG, "Activated bot instance: " + name);
+        }
+    }
+
+    /**
+     * 空闲超过 idleTtlMs 时释放聊天通道，正在回复或信箱中还有消息时不释放
+     *
+     * @return 是否释放
+     */
+    public boolean releaseIfIdle(long idleTtlMs) {
+        synchronized (mailbox) {
+            if (transport == null || retired || isProcessing() || mailbox.size() > 0
+                    || SystemClock.elapsedRealtime() - lastActiveTime < idleTtlMs) {
+                return false;
+            }
+            transport = null;
+        }
+        Log.i(TAG, "Released idle bot instance: " + name);
+        return true;
+    }
+
+    public boolean isActive() {
+        return transport != null;
+    }
+
+    private BotMailbox.Policy getMailboxPolicy() {
+        return BotMailbox.Policy.parse(configManager.getMailboxPolicy(name));
+    }
+
+    private void cancelActiveTask() {
+        MessageTask task = activeTask;
+        if (task != null && !task.isDone()) {
+            task.cancel();
+            Log.d(TAG, "Cancelled previous task for " + name);
+        }
+    }
+
+    private class MessageTask implements StreamListener {
+        private final long id = NEXT_TASK_ID.getAndIncrement();
         private final String message;
+        // 取消信号负责中止批量请求，单个请求通过取消 future 中止
+        private final CancellationSignal signal = new CancellationSignal();
+        private volatile CompletableFuture<String> future;
+        // 回复已处理完（结果已发布），在此之前到达的消息按忙碌处理
+        private volatile boolean finished;
+        private final long startTime;
+        private long lastPartialTime;
 
         MessageTask(String message) {
             this.message = message;
+            this.startTime = System.currentTimeMillis();
         }
 
         @Override
-        public void run() {
-            try {
-                // 调用API获取回复
-                String reply = apiClient.getReply(message);
+        public void onPartial(CharSequence text) {
+            // 被新消息取代的任务不再更新界面，并限制发布频率；只有真正发布时才复制累计的文本
+            long now = System.currentTimeMillis();
+            if (activeTask != this || now - lastPartialTime < STREAM_UPDATE_INTERVAL_MS) {
+                return;
+            }
+            lastPartialTime = now;
+            publishReply(ReplyEvent.TYPE_PARTIAL, id, text.toString(), now - startTime);
+        }
 
-                if (Thread.currentThread().isInterrupted()) {
-                    Log.d(TAG, "Task interrupted for " + name);
+        void start() {
+            if (signal.isCanceled()) {
+                return;
+            }
+            // 批量请求由 BatchDispatcher 统一限速，单独请求在这里按提供商额度错开
+            if (!isBatching()) {
+                long waitMs = rateLimiter.reserve(1, ProviderRateLimiter.estimateTokens(message));
+                if (waitMs > 0) {
+                    scheduler.schedule(name, this::dispatch, waitMs);
                     return;
                 }
+            }
+            dispatch();
+        }
 
-                if (reply != null && !reply.isEmpty()) {
-                    Log.i(TAG, "Received reply from " + name + ": " + reply);
-                    broadcastReply(reply);
-                } else {
-                    Log.w(TAG, "Empty reply received from " + name);
-                    broadcastReply("抱歉，我没有理解您的问题。");
+        private void dispatch() {
+            ChatTransport channel;
+            BatchDispatcher dispatcher;
+            boolean streaming;
+            // destroy() 在同一把锁内取消任务并清空字段，未取消时读到的字段都不为 null
+            synchronized (mailbox) {
+                if (signal.isCanceled()) {
+                    return;
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error processing message in " + name, e);
-                broadcastReply("处理消息时出现错误，请稍后重试。");
+                channel = transport;
+                dispatcher = batchDispatcher;
+                streaming = configManager.isStreamingEnabled();
+            }
+            CompletableFuture<String> f = requestReply(channel, dispatcher, message, streaming ? this : null, signal);
+            future = f;
+            // 读取字段之后、赋值 future 之前被取消时，cancel() 看不到这个请求
+            if (signal.isCanceled()) {
+                f.cancel(false);
             }
+            f.whenCompleteAsync(this::onComplete, callbackExecutor);
+        }
+
+        void cancel() {
+            signal.cancel();
+            CompletableFuture<String> f = future;
+            if (f != null) {
+                f.cancel(false);
+            }
+        }
+
+        boolean isDone() {
+            return finished || signal.isCanceled();
+        }
+
+        private long elapsed() {
+            return System.currentTimeMillis() - startTime;
+        }
+
+        private void onComplete(String reply, Throwable error) {
+            if (activeTask != this || signal.isCanceled() || isCancellation(error)) {
+                Log.d(TAG, "Task cancelled for " + name);
+                finished = true;
+                return;
+            }
+
+            if (error != null) {
+                Log.e(TAG, "Error processing message in " + name, error);
+                publishReply(ReplyEvent.TYPE_ERROR, id, "处理消息时出现错误，请稍后重试。", elapsed());
+            } else if (reply != null && !reply.isEmpty()) {
+                Log.i(TAG, "Received reply from " + name + ": " + reply);
+                publishReply(ReplyEvent.TYPE_FINAL, id, reply, elapsed());
+            } else {
+                Log.w(TAG, "Empty reply received from " + name);
+                publishReply(ReplyEvent.TYPE_ERROR, id, "抱歉，我没有理解您的问题。", elapsed());
+            }
+            finished = true;
+            startNext(this);
         }
     }
 
-    private void broadcastReply(String reply) {
-        try {
-            Intent intent = new Intent("com.maibot.groupchat.BOT_REPLY");
-            intent.putExtra("sender", name);
-            intent.putExtra("message", reply);
-            context.sendBroadcast(intent);
-        } catch (Exception e) {
-            Log.e(TAG, "Error broadcasting reply from " + name, e);
+    private static boolean isCancellation(Throwable error) {
+        if (error instanceof CompletionException) {
+            error = error.getCause();
         }
+        return error instanceof CancellationException;
     }
 
-    public void destroy() {
-        Log.i(TAG, "Destroying bot instance: " + name);
+    private boolean isBatching() {
+        BatchDispatcher dispatcher = batchDispatcher;
+        return dispatcher != null && dispatcher.isBatchingUseful();
+    }
 
-        // 取消当前任务
-        if (currentTask != null && !currentTask.isDone()) {
-            currentTask.cancel(true);
+    private CompletableFuture<String> requestReply(ChatTransport channel, BatchDispatcher dispatcher, String message,
+                                                   StreamListener listener, CancellationSignal signal) {
+        // 多个机器人时合并为一次批量请求，单个机器人直接请求
+        if (!dispatcher.isBatchingUseful()) {
+            return channel.getReplyAsync(message, listener, MESSAGE_TIMEOUT_MS, callbackExecutor);
         }
+        return dispatcher.submit(name, message, listener, signal);
+    }
 
-        // 关闭线程池
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
+    // 通过进程内回复总线交给界面，不再发送系统广播
+    private void publishReply(int type, String text, long latencyMs) {
+        publishReply(type, 0, text, latencyMs);
+    }
+
+    private void publishReply(int type, long taskId, String text, long latencyMs) {
+        ReplyBus.getInstance().publish(new ReplyEvent(type, name, taskId, text, latencyMs));
+        // 冷启动后的第一条回复是启动追踪的终点，此时导出完整的时间线
+        StartupTrace trace = StartupTrace.getInstance();
+        if (type == ReplyEvent.TYPE_FINAL && trace.end(StartupTrace.FIRST_REPLY)) {
+            trace.export();
         }
+    }
+
+    public void destroy() {
+        Log.i(TAG, "Destroying bot instance: " + name);
+
+        // 取消当前任务并丢弃排队的消息；之后不再接受新消息
+        synchronized (mailbox) {
+            retired = true;
+            mailbox.clear();
+            cancelActiveTask();
 
-        // 清理资源
-        apiClient = null;
-        configManager = null;
+            // 清理资源（连接池和Python桥接属于服务，不在这里关闭）
+            transport = null;
+            batchDispatcher = null;
+            configManager = null;
+        }
     }
 
     public String getName() {
         return name;
     }
 
+    public ClientStats getStats() {
+        return transport != null ? transport.getStats() : null;
+    }
+
     public boolean isProcessing() {
-        return currentTask != null && !currentTask.isDone();
+        MessageTask task = activeTask;
+        return task != null && !task.isDone();
+    }
+
+    // 信箱中等待处理的消息数
+    public int getMailboxDepth() {
+        synchronized (mailbox) {
+            return mailbox.size();
+        }
+    }
+
+    // 消息在信箱中的平均等待时间
+    public long getMailboxAverageWaitMs() {
+        synchronized (mailbox) {
+            return mailbox.getAverageWaitMs();
+        }
     }
 }
@@ -9,20 +9,36 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.chaquo.python.AndroidPlatform;
 import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
+import com.maibot.groupchat.MaiBotApplication;
 import com.maibot.groupchat.R;
 import com.maibot.groupchat.activity.MainActivity;
+import com.maibot.groupchat.network.ApiClient;
+import com.maibot.groupchat.network.BatchDispatcher;
+import com.maibot.groupchat.network.ChatTransport;
+import com.maibot.groupchat.network.CircuitBreaker;
+import com.maibot.groupchat.network.HttpTransport;
+import com.maibot.groupchat.network.ProviderRateLimiter;
+import com.maibot.groupchat.network.PythonBridgeClient;
+import com.maibot.groupchat.startup.StartupTrace;
 import com.maibot.groupchat.utils.SecureConfigManager;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MaiBotService extends Service {
@@ -30,27 +46,85 @@ public class MaiBotService extends Service {
     private static final String TAG = "MaiBotService";
     private static final String CHANNEL_ID = "MaiBotServiceChannel";
     private static final int NOTIFICATION_ID = 1;
-    private static final long PYTHON_INIT_TIMEOUT_MS = 60000; // 60秒初始化超时
+    private static final long PYTHON_INIT_TIMEOUT_MS = 60000; // 60秒初始化超时，也是消息等待就绪的期限
     private static final long SERVICE_START_RETRY_DELAY_MS = 5000; // 5秒重试延迟
+    private static final int BATCH_TIMEOUT_SECONDS = 60; // 批量请求需要等待所有机器人生成完毕
+    private static final int HEALTH_CHECK_TIMEOUT_SECONDS = 5;
+    private static final long HEALTH_PROBE_INTERVAL_MS = 5000; // 熔断期间健康检查间隔
+    private static final String SCHEDULER_KEY = "service"; // 服务自身任务在调度器中的队列
+    private static final long IDLE_SWEEP_INTERVAL_MS = 60000; // 检查空闲机器人的间隔
+    private static final long SERVER_RESTART_MIN_UPTIME_MS = 60000; // 就绪后运行超过该时长再退出才自动重启，避免反复崩溃
+    private static final String OUTBOX_KEY = "outbox"; // 发件箱写文件在调度器中的队列
+    public static final String EXTRA_MESSAGE = "message";
+    public static final String EXTRA_MESSAGE_ID = "message_id";
+    private static final String SYSTEM_SENDER = "MaiBot";
+
+    /**
+     * 异步调用的结果回调，总是在主线程执行
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * Python服务就绪后意外退出时的回调，由Python侧在服务线程上调用
+     */
+    public interface ServerExitListener {
+        void onServerExit(String reason);
+    }
 
     private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     private List<MaiBotInstance> botInstances;
-    private ConfigManager configManager;
-    private Python python;
+    private SecureConfigManager configManager;
+    private HttpTransport httpTransport;
+    private BatchDispatcher batchDispatcher;
+    private PythonBridgeClient pythonBridgeClient;
     private PyObject maibotModule;
     private AtomicBoolean isPythonServerRunning = new AtomicBoolean(false);
     private AtomicBoolean isInitializing = new AtomicBoolean(false);
-    private ExecutorService executorService;
+    private volatile ServiceState state = ServiceState.INITIALIZING;
+    private volatile long serverReadyAt;
+    // 所有机器人的任务共用一个调度器，线程数不随机器人数量变化；调度器上只运行不阻塞的任务
+    private BotScheduler scheduler;
+    // 等待Python模块、写配置、启动服务器和等待就绪都会阻塞数秒，在单独的线程上按顺序执行
+    private ExecutorService startupExecutor;
+    // 所有机器人共用当前提供商的请求和token额度
+    private ProviderRateLimiter rateLimiter;
+    // 服务未就绪时收到的消息，就绪后按顺序重放
+    private MessageOutbox outbox;
+    private ScheduledExecutorService healthMonitor;
+    // 健康检查链是否在运行，避免熔断器反复打开时同时存在多条检查链
+    private final AtomicBoolean healthProbing = new AtomicBoolean();
+    private ApiClient healthClient;
+    private volatile CircuitBreaker.State circuitState = CircuitBreaker.State.CLOSED;
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.i(TAG, "MaiBotService created");
 
-        configManager = new SecureConfigManager(this);
-        botInstances = new ArrayList<>();
-        executorService = Executors.newSingleThreadExecutor();
+        botInstances = new CopyOnWriteArrayList<>();
+        scheduler = new BotScheduler(this);
+        startupExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "service-startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Keystore和传输层由进程启动时的启动阶段并行准备，可能尚未完成，不在主线程等待；
+        // 作为启动线程上的第一个任务取用，之后的启动任务都排在它后面
+        MaiBotApplication app = (MaiBotApplication) getApplication();
+        runStartupTask(() -> {
+            configManager = app.getSecureConfigManager();
+            HttpTransport transport = app.takeHttpTransport();
+            httpTransport = transport != null ? transport : new HttpTransport(this);
+            httpTransport.setCircuitBreakerListener(this::onCircuitStateChanged);
+            rateLimiter = new ProviderRateLimiter(configManager);
+        });
+        outbox = new MessageOutbox(this, scheduler.executorFor(OUTBOX_KEY), this::onOutboxRestored);
+        healthMonitor = Executors.newSingleThreadScheduledExecutor();
 
         // 创建通知渠道（Android 8.0+）
         createNotificationChannel();
@@ -106,6 +180,53 @@ public class MaiBotService extends Service {
         }
     }
 
+    private String runningStatusText() {
+        String text = "服务运行中 - " + botInstances.size() + " 个实例";
+        switch (circuitState) {
+            case OPEN:
+                return text + "（服务无响应，已暂停请求）";
+            case HALF_OPEN:
+                return text + "（正在恢复连接）";
+            default:
+                return text;
+        }
+    }
+
+    /**
+     * 熔断器状态变化时更新通知；熔断期间定时做健康检查直到关闭，
+     * 打开状态下检查成功进入半开，半开状态下检查成功关闭，没有请求时也能恢复
+     */
+    private void onCircuitStateChanged(String endpoint, CircuitBreaker.State state) {
+        circuitState = state;
+        if (isPythonServerRunning.get()) {
+            setState(state == CircuitBreaker.State.CLOSED ? ServiceState.READY : ServiceState.DEGRADED);
+            updateNotification(runningStatusText());
+        }
+        if (state == CircuitBreaker.State.OPEN && healthProbing.compareAndSet(false, true)) {
+            scheduleHealthProbe();
+        }
+    }
+
+    private void scheduleHealthProbe() {
+        ApiClient client = healthClient;
+        if (client == null || healthMonitor == null || healthMonitor.isShutdown()) {
+            healthProbing.set(false);
+            return;
+        }
+        healthMonitor.schedule(() -> {
+            client.checkHealth();
+            if (circuitState != CircuitBreaker.State.CLOSED) {
+                scheduleHealthProbe();
+                return;
+            }
+            healthProbing.set(false);
+            // 结束检查链的同时熔断器可能又打开了
+            if (circuitState != CircuitBreaker.State.CLOSED && healthProbing.compareAndSet(false, true)) {
+                scheduleHealthProbe();
+            }
+        }, HEALTH_PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
     private void initPythonEnvironment() {
         if (isInitializing.get()) {
             Log.w(TAG, "Python environment already initializing");
@@ -113,26 +234,28 @@ public class MaiBotService extends Service {
         }
 
         isInitializing.set(true);
-        executorService.execute(() -> {
+        boolean submitted = runStartupTask(() -> {
             try {
                 long startTime = System.currentTimeMillis();
+                MaiBotApplication app = (MaiBotApplication) getApplication();
 
-                // 初始化Python
-                if (!Python.isStarted()) {
-                    Python.start(new AndroidPlatform(this));
-                    Log.i(TAG, "Python started successfully");
+                // Python启动和模块导入在进程启动时已经开始，这里只等待其完成
+                maibotModule = app.awaitPythonModule();
+                if (maibotModule == null) {
+                    throw new IllegalStateException("maibot_android 模块加载失败");
                 }
-                python = Python.getInstance();
-
-                // 导入MaiBot Android模块
-                maibotModule = python.getModule("maibot_android");
 
                 long initTime = System.currentTimeMillis() - startTime;
-                Log.i(TAG, "Python environment initialized in " + initTime + "ms");
+                Log.i(TAG, "Python environment ready after waiting " + initTime + "ms");
 
-                // 如果已配置，自动启动服务
+                // 如果已配置，自动启动服务；配置文件已由启动阶段生成时直接启动
                 if (configManager.isConfigured()) {
-                    initializeConfigInternal();
+                    if (app.awaitConfigMaterialized()) {
+                        updateNotification("配置已初始化");
+                        startPythonServer();
+                    } else {
+                        initializeConfigInternal();
+                    }
                 }
 
             } catch (Exception e) {
@@ -142,21 +265,66 @@ public class MaiBotService extends Service {
                 isInitializing.set(false);
             }
         });
+        if (!submitted) {
+            Log.e(TAG, "Startup executor rejected Python initialization");
+            isInitializing.set(false);
+        }
     }
 
-    public boolean initializeConfig(String apiProvider, String apiKey, int instanceCount) {
+    /**
+     * 在启动线程上执行会阻塞的启动任务，不占用机器人共享的调度器
+     *
+     * @return 服务已销毁时返回 false
+     */
+    private boolean runStartupTask(Runnable task) {
+        ExecutorService executor = startupExecutor;
+        if (executor == null) {
+            return false;
+        }
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 保存配置并启动服务，配置写入和Python调用都在后台线程执行
+     *
+     * @param callback 在主线程收到服务是否已启动，可为 null
+     */
+    public void initializeConfig(String apiProvider, String apiKey, int instanceCount, Callback<Boolean> callback) {
         if (isInitializing.get()) {
             Log.w(TAG, "Cannot initialize config while Python is initializing");
-            return false;
+            deliver(callback, false);
+            return;
         }
 
-        // 保存配置到 ConfigManager
-        configManager.setApiProvider(apiProvider);
-        configManager.setApiKey(apiKey);
-        configManager.setBotInstances(instanceCount);
-        configManager.setConfigured(true);
+        boolean submitted = runStartupTask(() -> {
+            // 保存配置到 ConfigManager
+            configManager.setApiProvider(apiProvider);
+            configManager.setApiKey(apiKey);
+            configManager.setBotInstances(instanceCount);
+            configManager.setConfigured(true);
 
-        return initializeConfigInternal();
+            deliver(callback, initializeConfigInternal());
+        });
+        if (!submitted) {
+            Log.e(TAG, "Startup executor rejected config initialization");
+            deliver(callback, false);
+        }
+    }
+
+    private <T> void deliver(Callback<T> callback, T result) {
+        if (callback != null) {
+            mainHandler.post(() -> callback.onResult(result));
+        }
+    }
+
+    // 调试版的StrictMode启用了自定义慢调用检测，在主线程调用Python时会被记录
+    private static void notePythonCall(String function) {
+        StrictMode.noteSlowCall("python:" + function);
     }
 
     private boolean initializeConfigInternal() {
@@ -176,8 +344,11 @@ public class MaiBotService extends Service {
                 return false;
             }
 
+            notePythonCall("initialize_config");
+            StartupTrace.getInstance().begin(StartupTrace.INITIALIZE_CONFIG);
             PyObject result = initConfigFunc.call(apiProvider, apiKey, instanceCount);
             boolean success = result.toBoolean();
+            StartupTrace.getInstance().end(StartupTrace.INITIALIZE_CONFIG);
 
             if (success) {
                 Log.i(TAG, "Config initialized successfully");
@@ -198,7 +369,14 @@ public class MaiBotService extends Service {
 
     private boolean startPythonServer() {
         if (isPythonServerRunning.get()) {
-            Log.w(TAG, "Python server already running");
+            // 设置页修改了机器人数量时只调整机器人池，不重启服务
+            Log.d(TAG, "Python server already running, reconciling bot instances");
+            reconcileBotInstances();
+            return true;
+        }
+
+        if (state == ServiceState.STARTING) {
+            Log.d(TAG, "Python server already starting");
             return true;
         }
 
@@ -208,20 +386,53 @@ public class MaiBotService extends Service {
                 return false;
             }
 
-            PyObject startServerFunc = maibotModule.get("start_server");
+            // 本地服务使用进程内桥接，不再启动HTTP服务器
+            // 重启时沿用首次启动选定的传输方式，机器人和批量分发器手里的通道始终有效
+            boolean direct = batchDispatcher != null ? pythonBridgeClient != null : configManager.useDirectTransport();
+            String entryPoint = direct ? "start_bridge" : "start_server";
+            PyObject startServerFunc = maibotModule.get(entryPoint);
             if (startServerFunc == null) {
-                Log.e(TAG, "start_server function not found");
+                Log.e(TAG, entryPoint + " function not found");
                 return false;
             }
 
-            PyObject result = startServerFunc.call();
+            // 就绪之后服务线程意外退出时由Python侧通知
+            notePythonCall("set_exit_listener");
+            maibotModule.callAttr("set_exit_listener", new ServerExitListener() {
+                @Override
+                public void onServerExit(String reason) {
+                    onPythonServerExit(reason);
+                }
+            });
+
+            // HTTP模式下本机服务只绑定Unix域套接字，不再监听8000端口
+            notePythonCall(entryPoint);
+            StartupTrace.getInstance().begin(StartupTrace.START_SERVER);
+            PyObject result = !direct && configManager.isLocalServer()
+                    ? startServerFunc.call(httpTransport.getLocalSocketPath())
+                    : startServerFunc.call();
             boolean success = result.toBoolean();
+            StartupTrace.getInstance().end(StartupTrace.START_SERVER);
 
             if (success) {
-                isPythonServerRunning.set(true);
-                Log.i(TAG, "Python server started successfully");
-                updateNotification("服务运行中 - " + botInstances.size() + " 个实例");
-                initializeBotInstances();
+                // 桥接客户端只持有Python模块，不依赖具体的服务线程，重启后继续使用原来的实例
+                if (direct && pythonBridgeClient == null) {
+                    pythonBridgeClient = new PythonBridgeClient(maibotModule);
+                } else if (!direct && healthClient == null) {
+                    healthClient = new ApiClient(this, httpTransport, HEALTH_CHECK_TIMEOUT_SECONDS);
+                }
+                if (batchDispatcher == null) {
+                    batchDispatcher = new BatchDispatcher(createTransport(BATCH_TIMEOUT_SECONDS), rateLimiter);
+                }
+                // 启动函数返回时服务器线程才刚创建，等到真正就绪后再放行消息
+                StartupTrace.getInstance().begin(StartupTrace.SERVER_BIND);
+                setState(ServiceState.STARTING);
+                updateNotification("正在等待服务就绪...");
+                if (!runStartupTask(() -> awaitServerReady(direct))) {
+                    Log.e(TAG, "Startup executor rejected readiness wait");
+                    setState(ServiceState.DEGRADED);
+                    return false;
+                }
                 return true;
             } else {
                 Log.e(TAG, "Failed to start Python server");
@@ -236,47 +447,182 @@ public class MaiBotService extends Service {
         }
     }
 
+    /**
+     * 在启动线程等待Python侧的就绪信号，HTTP模式下即套接字已绑定、应用已加载
+     * 就绪后才标记服务运行并重放发件箱，期限内未就绪时让等待中的消息失败
+     */
+    private void awaitServerReady(boolean direct) {
+        long startTime = SystemClock.elapsedRealtime();
+        boolean ready;
+        try {
+            notePythonCall("wait_until_ready");
+            ready = maibotModule.callAttr("wait_until_ready", PYTHON_INIT_TIMEOUT_MS / 1000.0).toBoolean();
+        } catch (Exception e) {
+            Log.e(TAG, "Error waiting for Python server", e);
+            ready = false;
+        }
+        long waitedMs = SystemClock.elapsedRealtime() - startTime;
+
+        if (!ready) {
+            Log.e(TAG, "Python server not ready after " + waitedMs + "ms");
+            setState(ServiceState.DEGRADED);
+            updateNotification("服务启动超时");
+            expireQueuedMessages(0);
+            return;
+        }
+
+        StartupTrace trace = StartupTrace.getInstance();
+        trace.end(StartupTrace.SERVER_BIND);
+        serverReadyAt = SystemClock.elapsedRealtime();
+        isPythonServerRunning.set(true);
+        setState(circuitState == CircuitBreaker.State.CLOSED ? ServiceState.READY : ServiceState.DEGRADED);
+        applyBotIdleTtl();
+        scheduleIdleSweep();
+        Log.i(TAG, "Python server ready in " + waitedMs + "ms (" + (direct ? "direct" : "http") + " transport)");
+        updateNotification(runningStatusText());
+        reconcileBotInstances();
+        flushOutbox();
+
+        // 启动追踪：就绪后第一次健康检查通过的耗时，之后导出到目前为止的时间线
+        trace.begin(StartupTrace.FIRST_HEALTH_OK);
+        ChatTransport probe = direct ? pythonBridgeClient : healthClient;
+        if (probe != null && probe.checkHealth()) {
+            trace.end(StartupTrace.FIRST_HEALTH_OK);
+        }
+        trace.export();
+    }
+
+    /**
+     * Python服务就绪后意外退出（在Python服务线程上调用）：不再直接发送消息，之后的消息存入发件箱；
+     * 运行了足够长时间才退出时重启一次，启动后很快又退出则停留在 DEGRADED，等待消息到期后提示用户
+     */
+    private void onPythonServerExit(String reason) {
+        if (!isPythonServerRunning.getAndSet(false)) {
+            return;
+        }
+        long uptimeMs = SystemClock.elapsedRealtime() - serverReadyAt;
+        Log.e(TAG, "Python server exited after " + uptimeMs + "ms: " + reason);
+        setState(ServiceState.DEGRADED);
+        updateNotification("服务已退出: " + reason);
+        if (uptimeMs >= SERVER_RESTART_MIN_UPTIME_MS && runStartupTask(this::startPythonServer)) {
+            Log.i(TAG, "Restarting Python server");
+        }
+    }
+
+    private void setState(ServiceState newState) {
+        ServiceState previous = state;
+        state = newState;
+        if (previous != newState) {
+            Log.i(TAG, "Service state " + previous + " -> " + newState);
+        }
+    }
+
+    /**
+     * 停止Python服务，服务销毁时调度器随即关闭，因此在独立线程上调用Python
+     */
     private void stopPythonServer() {
-        if (!isPythonServerRunning.get()) {
+        if (!isPythonServerRunning.getAndSet(false)) {
             return;
         }
+        setState(ServiceState.INITIALIZING);
+        updateNotification("服务已停止");
 
-        try {
-            if (maibotModule != null) {
-                PyObject stopServerFunc = maibotModule.get("stop_server");
+        PyObject module = maibotModule;
+        if (module == null) {
+            return;
+        }
+        new Thread(() -> {
+            try {
+                PyObject stopServerFunc = module.get("stop_server");
                 if (stopServerFunc != null) {
+                    notePythonCall("stop_server");
                     stopServerFunc.call();
                 }
+                Log.i(TAG, "Python server stopped");
+            } catch (Exception e) {
+                Log.e(TAG, "Error stopping Python server", e);
             }
-            isPythonServerRunning.set(false);
-            Log.i(TAG, "Python server stopped");
-            updateNotification("服务已停止");
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error stopping Python server", e);
-        }
+        }, "python-stop").start();
     }
 
-    private void initializeBotInstances() {
-        // 清理现有实例
-        for (MaiBotInstance instance : botInstances) {
-            instance.destroy();
-        }
-        botInstances.clear();
-
+    /**
+     * 按配置的数量增量调整机器人池：保留现有实例，只创建新增的实例，
+     * 多出的实例不再接收消息，正在进行的回复完成后才释放
+     */
+    // 启动线程（服务器就绪时）和主线程（设置页修改数量时）都会调用，加锁避免重复创建同名机器人
+    private synchronized void reconcileBotInstances() {
+        int previousCount = botInstances.size();
         int instanceCount = configManager.getBotInstances();
 
-        for (int i = 1; i <= instanceCount; i++) {
+        while (botInstances.size() > instanceCount) {
+            MaiBotInstance removed = botInstances.remove(botInstances.size() - 1);
+            removed.retire();
+        }
+
+        for (int i = botInstances.size() + 1; i <= instanceCount; i++) {
             try {
-                MaiBotInstance botInstance = new MaiBotInstance(this, "Bot " + i);
+                MaiBotInstance botInstance = new MaiBotInstance(this, "Bot " + i,
+                        () -> createTransport(ApiClient.DEFAULT_TIMEOUT_SECONDS), batchDispatcher, scheduler,
+                        rateLimiter);
                 botInstances.add(botInstance);
             } catch (Exception e) {
                 Log.e(TAG, "Failed to create bot instance " + i, e);
+                break;
             }
         }
 
-        Log.i(TAG, "Initialized " + botInstances.size() + " bot instances");
-        updateNotification("服务运行中 - " + botInstances.size() + " 个实例");
+        batchDispatcher.setExpectedParticipants(botInstances.size());
+
+        Log.i(TAG, "Bot pool resized " + previousCount + " -> " + botInstances.size()
+                + ", shared pool holds " + httpTransport.getConnectionCount() + " connections");
+        updateNotification(runningStatusText());
+    }
+
+    // Python侧的机器人会话使用同样的空闲期限
+    private void applyBotIdleTtl() {
+        try {
+            notePythonCall("set_bot_idle_ttl");
+            maibotModule.callAttr("set_bot_idle_ttl", configManager.getBotIdleTtlMinutes() * 60);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to set bot idle TTL", e);
+        }
+    }
+
+    private void scheduleIdleSweep() {
+        if (scheduler != null) {
+            scheduler.schedule(SCHEDULER_KEY, this::releaseIdleBots, IDLE_SWEEP_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * 释放空闲超过期限的机器人，常驻资源只随活跃的机器人数量增长
+     */
+    private void releaseIdleBots() {
+        if (!isPythonServerRunning.get()) {
+            return;
+        }
+        long idleTtlMs = configManager.getBotIdleTtlMinutes() * 60000L;
+        for (MaiBotInstance botInstance : botInstances) {
+            botInstance.releaseIfIdle(idleTtlMs);
+        }
+        // Python侧的会话按同样的期限释放
+        try {
+            notePythonCall("release_idle_bots");
+            maibotModule.callAttr("release_idle_bots");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to release idle Python sessions", e);
+        }
+        scheduleIdleSweep();
+    }
+
+    /**
+     * 创建聊天通道：桥接模式下所有机器人共享同一个桥接客户端，HTTP模式下每个机器人一个共享连接池的视图
+     */
+    private ChatTransport createTransport(int timeoutSeconds) {
+        if (pythonBridgeClient != null) {
+            return pythonBridgeClient;
+        }
+        return new ApiClient(this, httpTransport, timeoutSeconds);
     }
 
     @Override
@@ -285,10 +631,11 @@ public class MaiBotService extends Service {
 
         if (intent != null) {
             // 处理来自MainActivity的消息
-            if (intent.hasExtra("message")) {
-                String message = intent.getStringExtra("message");
+            if (intent.hasExtra(EXTRA_MESSAGE)) {
+                String message = intent.getStringExtra(EXTRA_MESSAGE);
+                String messageId = intent.getStringExtra(EXTRA_MESSAGE_ID);
                 if (message != null && !message.isEmpty()) {
-                    sendMessageToBots(message);
+                    sendMessageToBots(messageId != null ? messageId : UUID.randomUUID().toString(), message);
                 }
             }
 
@@ -320,22 +667,36 @@ public class MaiBotService extends Service {
         }
         botInstances.clear();
 
-        // 关闭线程池
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
-            try {
-                // 等待5秒让任务完成
-                if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                    // 强制关闭
-                    executorService.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executorService.shutdownNow();
-            }
+        // 关闭调度器，未执行的任务直接丢弃
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+        if (startupExecutor != null) {
+            startupExecutor.shutdownNow();
+            startupExecutor = null;
+        }
+
+        // 关闭共享传输层
+        if (healthMonitor != null) {
+            healthMonitor.shutdownNow();
+            healthMonitor = null;
+        }
+        healthClient = null;
+        if (batchDispatcher != null) {
+            batchDispatcher.shutdown();
+            batchDispatcher = null;
+        }
+        if (pythonBridgeClient != null) {
+            pythonBridgeClient.shutdown();
+            pythonBridgeClient = null;
+        }
+        if (httpTransport != null) {
+            httpTransport.shutdown();
+            httpTransport = null;
         }
 
         // 清理Python
-        python = null;
         maibotModule = null;
     }
 
@@ -345,11 +706,65 @@ public class MaiBotService extends Service {
     }
 
     public void sendMessageToBots(String message) {
+        sendMessageToBots(UUID.randomUUID().toString(), message);
+    }
+
+    /**
+     * 发送消息给所有机器人；服务未就绪时存入发件箱，就绪后自动发送
+     *
+     * @param messageId 幂等键，同一个键的消息只会发送一次
+     */
+    public void sendMessageToBots(String messageId, String message) {
+        if (!outbox.enqueue(messageId, message)) {
+            return;
+        }
+        StartupTrace.getInstance().begin(StartupTrace.FIRST_REPLY);
         if (!isPythonServerRunning.get()) {
-            Log.w(TAG, "Cannot send message: Python server not running");
+            Log.i(TAG, "Python server not ready (" + state + "), message " + messageId + " queued");
+            scheduleQueuedMessageExpiry();
             return;
         }
+        flushOutbox();
+    }
 
+    /**
+     * 服务仍未就绪时，让等待超过期限的消息失败并提示用户，而不是无限期等待
+     */
+    private void expireQueuedMessages(long maxWaitMs) {
+        if (isPythonServerRunning.get()) {
+            return;
+        }
+        int expired = outbox.expire(maxWaitMs);
+        if (expired > 0) {
+            Log.w(TAG, expired + " queued message(s) expired waiting for readiness");
+        }
+        for (int i = 0; i < expired; i++) {
+            ReplyBus.getInstance().publish(new ReplyEvent(ReplyEvent.TYPE_ERROR, SYSTEM_SENDER,
+                    "服务启动超时，消息未能发送，请稍后重试。", 0));
+        }
+    }
+
+    private void onOutboxRestored() {
+        if (isPythonServerRunning.get()) {
+            flushOutbox();
+        } else {
+            scheduleQueuedMessageExpiry();
+        }
+    }
+
+    private void scheduleQueuedMessageExpiry() {
+        BotScheduler current = scheduler;
+        if (current != null) {
+            current.schedule(SCHEDULER_KEY, () -> expireQueuedMessages(PYTHON_INIT_TIMEOUT_MS),
+                    PYTHON_INIT_TIMEOUT_MS);
+        }
+    }
+
+    private synchronized void flushOutbox() {
+        outbox.flush(this::dispatchToBots);
+    }
+
+    private void dispatchToBots(String message) {
         for (MaiBotInstance botInstance : botInstances) {
             try {
                 botInstance.sendMessage(message);
@@ -361,7 +776,7 @@ public class MaiBotService extends Service {
 
     public void updateBotInstances() {
         if (isPythonServerRunning.get()) {
-            initializeBotInstances();
+            reconcileBotInstances();
         }
     }
 
@@ -373,6 +788,10 @@ public class MaiBotService extends Service {
         return isPythonServerRunning.get();
     }
 
+    public ServiceState getServiceState() {
+        return state;
+    }
+
     public boolean isInitializing() {
         return isInitializing.get();
     }
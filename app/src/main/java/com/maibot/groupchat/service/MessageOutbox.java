@@ -0,0 +1,344 @@
+package com.maibot.groupchat.service;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * 持久化的发件箱 - 服务未就绪（Python冷启动、服务被系统重启）时收到的消息先存入应用存储，
+ * 服务就绪后按顺序重放
+ * 每条消息带幂等键：同一个键只会被接受一次、发送一次，键记为已发送并写入文件之后才发出消息，
+ * 进程在发出后被杀死时不会重放
+ * 内存中的状态是权威的，读写文件都在后台执行器上按顺序进行，每次写入最新的完整快照
+ */
+public final class MessageOutbox {
+
+    private static final String TAG = "MessageOutbox";
+    private static final String FILE_NAME = "outbox.json";
+    // 记住最近发送过的键的数量，用于识别重复提交
+    static final int MAX_SENT_KEYS = 200;
+
+    public interface Dispatcher {
+        void dispatch(String message);
+    }
+
+    /**
+     * 快照的存取，默认为应用存储中的 AtomicFile
+     */
+    interface Storage {
+        /**
+         * @return 上次写入的快照，从未写入时返回 null
+         */
+        String read() throws IOException;
+
+        void write(String snapshot) throws IOException;
+    }
+
+    private final Storage storage;
+    private final Executor ioExecutor;
+    private final Runnable onRestored;
+    private final LongSupplier clock;
+    private final Gson gson = new Gson();
+    private final Object lock = new Object();
+    private final List<Entry> pending = new ArrayList<>();
+    private final Set<String> sentKeys = new LinkedHashSet<>();
+    // 状态版本号，写文件时跳过已被更新版本覆盖的旧快照
+    private long version;
+    private long writtenVersion;
+    // 文件读取完成前不写文件，否则会覆盖尚未恢复的消息
+    private boolean loaded;
+
+    /**
+     * @param onRestored 从文件恢复出待发送的消息后在后台线程调用，服务已就绪时应再次 flush
+     */
+    public MessageOutbox(Context context, Executor ioExecutor, Runnable onRestored) {
+        this(new FileStorage(new File(context.getFilesDir(), FILE_NAME)), ioExecutor, onRestored,
+                SystemClock::elapsedRealtime);
+    }
+
+    // 单元测试直接指定存储和时钟；ioExecutor 必须按提交顺序执行任务
+    MessageOutbox(Storage storage, Executor ioExecutor, Runnable onRestored, LongSupplier clock) {
+        this.storage = storage;
+        this.ioExecutor = ioExecutor;
+        this.onRestored = onRestored;
+        this.clock = clock;
+        ioExecutor.execute(this::load);
+    }
+
+    /**
+     * 接受一条消息
+     *
+     * @param key 幂等键，由发送方生成；重复的键直接忽略
+     * @return 消息是否被接受
+     */
+    public boolean enqueue(String key, String message) {
+        synchronized (lock) {
+            if (sentKeys.contains(key) || containsPending(key)) {
+                Log.d(TAG, "Duplicate message " + key + ", ignoring");
+                return false;
+            }
+            pending.add(new Entry(key, message, System.currentTimeMillis(), clock.getAsLong()));
+            version++;
+        }
+        persist();
+        return true;
+    }
+
+    /**
+     * 按顺序发出所有待发送的消息，应在服务就绪后调用
+     * 消息在后台执行器上、已发送的键写入文件之后才发出；写入失败时消息放回待发送队列，下次 flush 时重试
+     */
+    public void flush(Dispatcher dispatcher) {
+        List<Entry> entries;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            entries = new ArrayList<>(pending);
+            pending.clear();
+            for (Entry entry : entries) {
+                markSent(entry.key);
+            }
+            version++;
+        }
+
+        ioExecutor.execute(() -> {
+            if (!write()) {
+                restore(entries);
+                return;
+            }
+            for (Entry entry : entries) {
+                Log.d(TAG, "Dispatching message " + entry.key + " queued "
+                        + (System.currentTimeMillis() - entry.createdAt) + "ms ago");
+                dispatcher.dispatch(entry.message);
+            }
+        });
+    }
+
+    // 已发送状态未能写入文件，撤销标记，消息排回队首
+    private void restore(List<Entry> entries) {
+        Log.w(TAG, "Could not persist sent keys, keeping " + entries.size() + " messages queued");
+        synchronized (lock) {
+            for (Entry entry : entries) {
+                sentKeys.remove(entry.key);
+            }
+            pending.addAll(0, entries);
+            version++;
+        }
+    }
+
+    /**
+     * 丢弃等待时间达到期限的消息，等待时间从本次进程接受或恢复该消息时算起
+     *
+     * @return 丢弃的消息数
+     */
+    public int expire(long maxWaitMs) {
+        long now = clock.getAsLong();
+        int expired = 0;
+        synchronized (lock) {
+            Iterator<Entry> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (now - entry.queuedAt >= maxWaitMs) {
+                    iterator.remove();
+                    expired++;
+                }
+            }
+            if (expired == 0) {
+                return 0;
+            }
+            version++;
+        }
+        persist();
+        return expired;
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private boolean containsPending(String key) {
+        for (Entry entry : pending) {
+            if (entry.key.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void markSent(String key) {
+        sentKeys.add(key);
+        if (sentKeys.size() > MAX_SENT_KEYS) {
+            String oldest = sentKeys.iterator().next();
+            sentKeys.remove(oldest);
+        }
+    }
+
+    private void persist() {
+        ioExecutor.execute(this::write);
+    }
+
+    /**
+     * 写入最新的快照
+     *
+     * @return 当前状态是否已在文件中；文件尚未读取或写入失败时返回 false
+     */
+    private boolean write() {
+        synchronized (storage) {
+            State state = new State();
+            long snapshotVersion;
+            // 在存储锁内取快照，较旧的快照不会在较新的之后写入
+            synchronized (lock) {
+                if (!loaded) {
+                    return false;
+                }
+                if (version <= writtenVersion) {
+                    return true;
+                }
+                snapshotVersion = version;
+                state.pending = new ArrayList<>(pending);
+                state.sentKeys = new ArrayList<>(sentKeys);
+            }
+            try {
+                storage.write(gson.toJson(state));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to persist outbox", e);
+                return false;
+            }
+            synchronized (lock) {
+                writtenVersion = Math.max(writtenVersion, snapshotVersion);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 恢复上次进程留下的消息，排在读取完成前已接受的消息之前
+     */
+    private void load() {
+        State state = read();
+        int restoredCount = 0;
+        synchronized (lock) {
+            if (state != null) {
+                if (state.sentKeys != null) {
+                    for (String key : state.sentKeys) {
+                        if (!sentKeys.contains(key)) {
+                            markSent(key);
+                        }
+                    }
+                }
+                if (state.pending != null) {
+                    List<Entry> restored = new ArrayList<>();
+                    long now = clock.getAsLong();
+                    for (Entry entry : state.pending) {
+                        if (!sentKeys.contains(entry.key) && !containsPending(entry.key)) {
+                            entry.queuedAt = now;
+                            restored.add(entry);
+                        }
+                    }
+                    pending.addAll(0, restored);
+                    restoredCount = restored.size();
+                }
+            }
+            loaded = true;
+            version++;
+        }
+        persist();
+        if (restoredCount > 0) {
+            Log.i(TAG, "Restored " + restoredCount + " queued messages");
+            onRestored.run();
+        }
+    }
+
+    private State read() {
+        try {
+            String snapshot = storage.read();
+            return snapshot != null ? gson.fromJson(snapshot, State.class) : null;
+        } catch (IOException | JsonParseException e) {
+            Log.e(TAG, "Failed to load outbox, starting empty", e);
+            return null;
+        }
+    }
+
+    private static final class FileStorage implements Storage {
+        private final AtomicFile file;
+
+        FileStorage(File file) {
+            this.file = new AtomicFile(file);
+        }
+
+        @Override
+        public String read() throws IOException {
+            if (!file.getBaseFile().exists()) {
+                return null;
+            }
+            try (FileInputStream in = file.openRead();
+                 Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                StringBuilder builder = new StringBuilder();
+                char[] buffer = new char[4096];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    builder.append(buffer, 0, read);
+                }
+                return builder.toString();
+            }
+        }
+
+        @Override
+        public void write(String snapshot) throws IOException {
+            FileOutputStream out = file.startWrite();
+            try {
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                writer.write(snapshot);
+                writer.flush();
+                file.finishWrite(out);
+            } catch (IOException e) {
+                file.failWrite(out);
+                throw e;
+            }
+        }
+    }
+
+    private static final class State {
+        List<Entry> pending;
+        List<String> sentKeys;
+    }
+
+    private static final class Entry {
+        final String key;
+        final String message;
+        final long createdAt;
+        // 本次进程中开始等待的时间，不写入文件
+        transient long queuedAt;
+
+        Entry(String key, String message, long createdAt, long queuedAt) {
+            this.key = key;
+            this.message = message;
+            this.createdAt = createdAt;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
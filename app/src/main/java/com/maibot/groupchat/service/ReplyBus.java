@@ -0,0 +1,92 @@
+package com.maibot.groupchat.service;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内回复总线 - 取代全局 BOT_REPLY 广播，事件对象直接按引用交给订阅者，
+ * 不经过系统服务，也不会被其他应用收到
+ * 订阅者在主线程收到事件；同一发送者的流式片段在投递前只保留最新的一个，
+ * 片段产生得再快，主线程每轮也只处理一次
+ */
+public final class ReplyBus {
+
+    public interface Listener {
+        void onReply(ReplyEvent event);
+    }
+
+    private static final ReplyBus INSTANCE = new ReplyBus();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private ReplyBus() {
+    }
+
+    public static ReplyBus getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 订阅回复事件，owner 销毁时自动取消订阅
+     */
+    public void subscribe(LifecycleOwner owner, Listener listener) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        Subscription subscription = new Subscription(listener, lifecycle);
+        subscriptions.add(subscription);
+        lifecycle.addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(LifecycleOwner source) {
+                subscriptions.remove(subscription);
+                lifecycle.removeObserver(this);
+            }
+        });
+    }
+
+    /**
+     * 发布事件，可在任意线程调用
+     */
+    public void publish(ReplyEvent event) {
+        for (Subscription subscription : subscriptions) {
+            subscription.post(event);
+        }
+    }
+
+    private final class Subscription {
+        private final Listener listener;
+        private final Lifecycle lifecycle;
+        // 尚未投递的最新片段，按发送者索引
+        private final ConcurrentHashMap<String, ReplyEvent> pendingPartials = new ConcurrentHashMap<>();
+
+        Subscription(Listener listener, Lifecycle lifecycle) {
+            this.listener = listener;
+            this.lifecycle = lifecycle;
+        }
+
+        void post(ReplyEvent event) {
+            if (!event.isPartial()) {
+                mainHandler.post(() -> deliver(event));
+            } else if (pendingPartials.put(event.sender, event) == null) {
+                // 已有待投递的片段时只替换内容，不再重复排队
+                mainHandler.post(() -> deliver(pendingPartials.remove(event.sender)));
+            }
+        }
+
+        private void deliver(ReplyEvent event) {
+            if (event != null && lifecycle.getCurrentState() != Lifecycle.State.DESTROYED) {
+                listener.onReply(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.maibot.groupchat.service;
+
+/**
+ * 机器人回复事件，不可变对象，在进程内按引用传递
+ */
+public final class ReplyEvent {
+
+    // 流式输出中的片段，text 为目前为止的完整内容
+    public static final int TYPE_PARTIAL = 0;
+    // 最终回复
+    public static final int TYPE_FINAL = 1;
+    // 出错时给用户的提示
+    public static final int TYPE_ERROR = 2;
+    // 消息不会单独得到回复（忙碌时被丢弃，或与排队的消息合并），text 为 null，界面据此移除一个加载占位
+    public static final int TYPE_SKIPPED = 3;
+
+    public final int type;
+    public final String sender;
+    // 产生该事件的回复任务，同一机器人的新任务编号更大；与任务无关的提示为 0
+    public final long taskId;
+    public final String text;
+    // 从发出请求到产生该事件的耗时，与请求无关的提示为 0
+    public final long latencyMs;
+    public final long timestamp;
+
+    public ReplyEvent(int type, String sender, String text, long latencyMs) {
+        this(type, sender, 0, text, latencyMs);
+    }
+
+    public ReplyEvent(int type, String sender, long taskId, String text, long latencyMs) {
+        this.type = type;
+        this.sender = sender;
+        this.taskId = taskId;
+        this.text = text;
+        this.latencyMs = latencyMs;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public boolean isPartial() {
+        return type == TYPE_PARTIAL;
+    }
+}
@@ -0,0 +1,16 @@
+package com.maibot.groupchat.service;
+
+/**
+ * 服务状态 - INITIALIZING → STARTING → READY，运行中后端无响应时进入 DEGRADED，恢复后回到 READY
+ * 只有 READY 和 DEGRADED 状态下消息才会直接发给机器人，其余状态下消息在发件箱中等待就绪
+ */
+public enum ServiceState {
+    // Python环境加载中，或尚未配置
+    INITIALIZING,
+    // 服务已启动，等待套接字绑定和应用加载完成
+    STARTING,
+    // 服务已就绪
+    READY,
+    // 服务运行中但后端无响应（熔断中），或启动未能在期限内完成
+    DEGRADED
+}
@@ -0,0 +1,178 @@
+package com.maibot.groupchat.startup;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动编排器 - 启动过程拆成若干阶段，声明阶段之间的依赖，互不依赖的阶段在进程启动时并行执行，
+ * 依赖全部完成后才执行后续阶段；依赖失败时后续阶段不执行，同样以失败结束
+ * 每个阶段记录等待依赖和实际执行的耗时，全部结束后输出汇总
+ */
+public final class StartupOrchestrator {
+
+    private static final String TAG = "StartupOrchestrator";
+    // 启动阶段大多在等待IO或Python，线程数不必多于阶段数
+    private static final int MAX_THREADS = 3;
+
+    private final Map<String, Stage<?>> stages = new LinkedHashMap<>();
+    private final AtomicInteger remaining = new AtomicInteger();
+    private ExecutorService executor;
+    private long startTime;
+
+    /**
+     * 声明一个阶段，依赖必须已经声明
+     *
+     * @param dependencies 需要先完成的阶段名
+     */
+    public <T> StartupOrchestrator stage(String name, Callable<T> task, String... dependencies) {
+        if (executor != null) {
+            throw new IllegalStateException("Stages must be declared before start()");
+        }
+        if (stages.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate stage " + name);
+        }
+        for (String dependency : dependencies) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage " + name + " depends on undeclared stage " + dependency);
+            }
+        }
+        stages.put(name, new Stage<>(name, task, dependencies));
+        return this;
+    }
+
+    /**
+     * 开始执行：没有依赖的阶段立即提交，其余阶段在依赖完成时提交
+     */
+    public void start() {
+        if (executor != null) {
+            return;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_THREADS, stages.size())), runnable -> {
+            Thread thread = new Thread(runnable, "startup-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        remaining.set(stages.size());
+        startTime = SystemClock.elapsedRealtime();
+
+        for (Stage<?> stage : stages.values()) {
+            CompletableFuture<?>[] dependencies = new CompletableFuture<?>[stage.dependencies.length];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencies[i] = stages.get(stage.dependencies[i]).future;
+            }
+            CompletableFuture.allOf(dependencies).whenComplete((ignored, error) -> {
+                stage.readyAt = SystemClock.elapsedRealtime();
+                if (error != null) {
+                    Log.w(TAG, "Stage " + stage.name + " skipped, a dependency failed");
+                    stage.future.completeExceptionally(error);
+                    onStageFinished();
+                } else {
+                    executor.execute(() -> run(stage));
+                }
+            });
+        }
+    }
+
+    private <T> void run(Stage<T> stage) {
+        stage.startedAt = SystemClock.elapsedRealtime();
+        stage.thread = Thread.currentThread().getName();
+        StartupTrace.getInstance().begin(stage.name);
+        try {
+            T result = stage.task.call();
+            stage.finishedAt = SystemClock.elapsedRealtime();
+            StartupTrace.getInstance().end(stage.name);
+            Log.i(TAG, "Stage " + stage.name + " finished: " + stage.describe(startTime));
+            stage.future.complete(result);
+        } catch (Exception e) {
+            stage.finishedAt = SystemClock.elapsedRealtime();
+            Log.e(TAG, "Stage " + stage.name + " failed: " + stage.describe(startTime), e);
+            stage.future.completeExceptionally(e);
+        }
+        onStageFinished();
+    }
+
+    private void onStageFinished() {
+        if (remaining.decrementAndGet() > 0) {
+            return;
+        }
+        executor.shutdown();
+        Log.i(TAG, "Startup finished:\n" + describeTimings());
+    }
+
+    /**
+     * 阶段完成时得到结果的 Future，失败时以异常结束
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> future(String name) {
+        Stage<?> stage = stages.get(name);
+        if (stage == null) {
+            throw new IllegalArgumentException("Unknown stage " + name);
+        }
+        return (CompletableFuture<T>) stage.future;
+    }
+
+    /**
+     * 阻塞等待阶段完成并返回结果，阶段失败时返回 null
+     */
+    public <T> T await(String name) {
+        CompletableFuture<T> future = future(name);
+        try {
+            return future.join();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Stage " + name + " unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 各阶段耗时，时间点从进程启动算起
+     */
+    public String describeTimings() {
+        List<String> lines = new ArrayList<>();
+        for (Stage<?> stage : stages.values()) {
+            lines.add(stage.name + ": " + stage.describe(startTime));
+        }
+        return String.join("\n", lines);
+    }
+
+    private static final class Stage<T> {
+        final String name;
+        final Callable<T> task;
+        final String[] dependencies;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        volatile long readyAt;
+        volatile long startedAt;
+        volatile long finishedAt;
+        volatile String thread;
+
+        Stage(String name, Callable<T> task, String[] dependencies) {
+            this.name = name;
+            this.task = task;
+            this.dependencies = dependencies;
+        }
+
+        String describe(long orchestratorStart) {
+            if (startedAt == 0) {
+                return "not run";
+            }
+            long processStart = Process.getStartElapsedRealtime();
+            long end = finishedAt != 0 ? finishedAt : SystemClock.elapsedRealtime();
+            return "ran " + (end - startedAt) + "ms on " + thread
+                    + ", waited " + (readyAt - orchestratorStart) + "ms for dependencies"
+                    + " and " + (startedAt - readyAt) + "ms for a thread"
+                    + ", started at +" + (startedAt - processStart) + "ms";
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.maibot.groupchat.startup;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动追踪 - 记录从进程启动到第一条回复之间各阶段的耗时
+ * 每个名字只记录第一次出现，之后的同名调用被忽略，因此可以直接放在会重复执行的代码路径上
+ * 区间同时作为 android.os.Trace 异步区间输出（API 29+），可在 Perfetto/systrace 中查看；
+ * 导出时写入 files/startup_trace.json，格式为 Chrome Trace Event，可直接在 ui.perfetto.dev 打开
+ */
+public final class StartupTrace {
+
+    private static final String TAG = "StartupTrace";
+    private static final String FILE_NAME = "startup_trace.json";
+    private static final String CATEGORY = "startup";
+
+    // 启动各阶段的名字
+    public static final String PROCESS_START = "process_start";
+    public static final String APPLICATION = "application";
+    public static final String ACTIVITY_FIRST_FRAME = "activity_first_frame";
+    public static final String INITIALIZE_CONFIG = "initialize_config";
+    public static final String START_SERVER = "start_server";
+    public static final String SERVER_BIND = "server_bind";
+    public static final String FIRST_HEALTH_OK = "first_health_ok";
+    public static final String FIRST_REPLY = "first_reply";
+
+    private static final StartupTrace INSTANCE = new StartupTrace();
+
+    private final Map<String, Span> spans = new ConcurrentHashMap<>();
+    private final AtomicInteger nextCookie = new AtomicInteger(1);
+    private final Gson gson = new Gson();
+    private volatile AtomicFile file;
+
+    private StartupTrace() {
+    }
+
+    public static StartupTrace getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 指定导出位置，在 Application.onCreate 中调用
+     */
+    public void init(Context context) {
+        file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * 开始一个区间，可以在另一个线程结束
+     */
+    public void begin(String name) {
+        Span span = new Span(name, SystemClock.elapsedRealtime(), nextCookie.getAndIncrement());
+        if (spans.putIfAbsent(name, span) == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(name, span.cookie);
+        }
+    }
+
+    /**
+     * 结束区间，没有开始或已经结束时忽略
+     *
+     * @return 是否是这次调用结束了该区间
+     */
+    public boolean end(String name) {
+        Span span = spans.get(name);
+        if (span == null || !span.finish(SystemClock.elapsedRealtime())) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(name, span.cookie);
+        }
+        Log.i(TAG, name + " took " + (span.endMs - span.startMs) + "ms");
+        return true;
+    }
+
+    /**
+     * 记录已经结束的区间，时间为 SystemClock.elapsedRealtime()；事后补记的区间不会出现在系统追踪中
+     */
+    public void record(String name, long startMs, long endMs) {
+        Span span = new Span(name, startMs, 0);
+        span.finish(endMs);
+        if (spans.putIfAbsent(name, span) == null) {
+            Log.i(TAG, name + " took " + (endMs - startMs) + "ms");
+        }
+    }
+
+    /**
+     * 把已结束的区间写入文件，时间从进程启动算起，应在后台线程调用
+     */
+    public void export() {
+        AtomicFile target = file;
+        if (target == null) {
+            return;
+        }
+        long origin = Process.getStartElapsedRealtime();
+        int pid = Process.myPid();
+        TraceFile trace = new TraceFile();
+        for (Span span : spans.values()) {
+            if (!span.finished) {
+                continue;
+            }
+            TraceEvent event = new TraceEvent();
+            event.name = span.name;
+            event.cat = CATEGORY;
+            event.ph = "X";
+            event.ts = (span.startMs - origin) * 1000;
+            event.dur = (span.endMs - span.startMs) * 1000;
+            event.pid = pid;
+            event.tid = pid;
+            trace.traceEvents.add(event);
+        }
+        trace.traceEvents.sort(Comparator.comparingLong(event -> event.ts));
+
+        synchronized (this) {
+            FileOutputStream out = null;
+            try {
+                out = target.startWrite();
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                gson.toJson(trace, writer);
+                writer.flush();
+                target.finishWrite(out);
+                Log.d(TAG, "Exported " + trace.traceEvents.size() + " spans to " + FILE_NAME);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to export startup trace", e);
+                if (out != null) {
+                    target.failWrite(out);
+                }
+            }
+        }
+    }
+
+    private static final class Span {
+        final String name;
+        final long startMs;
+        final int cookie;
+        volatile long endMs;
+        volatile boolean finished;
+
+        Span(String name, long startMs, int cookie) {
+            this.name = name;
+            this.startMs = startMs;
+            this.cookie = cookie;
+        }
+
+        synchronized boolean finish(long now) {
+            if (finished) {
+                return false;
+            }
+            endMs = now;
+            finished = true;
+            return true;
+        }
+    }
+
+    // Chrome Trace Event 格式，时间单位为微秒
+    private static final class TraceFile {
+        final List<TraceEvent> traceEvents = new ArrayList<>();
+        final String displayTimeUnit = "ms";
+    }
+
+    private static final class TraceEvent {
+        String name;
+        String cat;
+        String ph;
+        long ts;
+        long dur;
+        int pid;
+        int tid;
+    }
+}
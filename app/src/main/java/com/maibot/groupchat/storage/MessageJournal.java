@@ -0,0 +1,311 @@
+package com.maibot.groupchat.storage;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 消息日志 - MessageStore 的预写日志，写入在排队提交到 SQLite 之前先追加到这里，
+ * 进程在提交前被杀死时，启动时从日志恢复尚未提交的写入
+ * 日志由固定大小的内存映射分段文件组成，追加只是内存拷贝，不涉及系统调用；
+ * 进程被杀死时已写入映射内存的数据由内核写回，msync 按固定间隔批量执行，只用于防范掉电
+ * 记录格式：[长度][CRC32][内容]，长度为 0 表示分段结束，恢复时遇到校验失败的记录即停止读取该分段
+ * 分段中的记录全部提交后整个分段被删除（压缩）；新分段只由后台线程提前创建，追加时从不创建文件，
+ * 备用分段尚未就绪时当前分段写满后的记录不写日志（仍会提交到 SQLite），直到新分段就绪
+ */
+final class MessageJournal {
+
+    private static final String TAG = "MessageJournal";
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+    private static final int MAGIC = 0x4D424A31; // "MBJ1"
+    private static final int HEADER_SIZE = 4;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final long SYNC_INTERVAL_MS = 200;
+
+    private final File directory;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "message-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final CRC32 crc = new CRC32();
+    private final Object lock = new Object();
+    // 以下字段由 lock 保护
+    private Segment active;
+    private Segment spare;
+    private boolean dirty;
+    private long nextSegmentId;
+    // recover() 之后才开始准备新分段；后台线程正在准备分段时不重复提交
+    private boolean started;
+    private boolean preparing;
+    // recover() 之后创建的第一个分段，更早的分段保存恢复出的记录
+    private long firstLiveSegmentId = Long.MAX_VALUE;
+    // 已提交到的分段，更早的分段可以删除
+    private volatile long committedSegmentId = -1;
+
+    MessageJournal(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 读取所有分段中校验通过的记录，按写入顺序返回，然后开始使用新分段
+     * 返回的记录应用完成后调用 {@link #discardRecovered}；在后台线程调用
+     */
+    List<byte[]> recover() {
+        List<byte[]> records = new ArrayList<>();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Cannot create journal directory " + directory);
+            return records;
+        }
+        long maxId = -1;
+        for (File file : listSegments()) {
+            long id = segmentId(file);
+            maxId = Math.max(maxId, id);
+            readSegment(file, records);
+        }
+
+        long activeId;
+        synchronized (lock) {
+            nextSegmentId = maxId + 1;
+            firstLiveSegmentId = nextSegmentId;
+            activeId = nextSegmentId++;
+        }
+        Segment segment = openSegment(activeId);
+        synchronized (lock) {
+            active = segment;
+            started = true;
+            preparing = true;
+        }
+        prepareSpare();
+        executor.scheduleWithFixedDelay(this::sync, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        return records;
+    }
+
+    /**
+     * 恢复出的记录已经写入 SQLite，删除恢复前的所有分段；
+     * 只删除恢复前就存在的分段，恢复之后新写入的分段不受影响
+     */
+    void discardRecovered() {
+        long firstLive;
+        synchronized (lock) {
+            firstLive = firstLiveSegmentId;
+        }
+        deleteSegmentsBefore(firstLive);
+    }
+
+    /**
+     * 追加一条记录，可在任意线程调用
+     *
+     * @return 记录所在的分段号，日志不可用时返回 -1（写入仍会提交到 SQLite，只是不受日志保护）
+     */
+    long append(byte[] payload) {
+        int frameSize = FRAME_HEADER_SIZE + payload.length;
+        if (frameSize > SEGMENT_SIZE - HEADER_SIZE - 4) {
+            Log.w(TAG, "Record of " + payload.length + " bytes too large for journal");
+            return -1;
+        }
+        synchronized (lock) {
+            if (active == null) {
+                requestSegmentLocked();
+                return -1;
+            }
+            // 末尾保留4字节给结束标记
+            if (active.buffer.remaining() < frameSize + 4 && !rollOver()) {
+                return -1;
+            }
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            int position = active.buffer.position();
+            // 先写内容和校验值，最后写长度，记录写到一半时长度仍为 0，恢复时视为分段结束
+            active.buffer.putInt(position + 4, (int) crc.getValue());
+            active.buffer.position(position + FRAME_HEADER_SIZE);
+            active.buffer.put(payload);
+            active.buffer.putInt(position, payload.length);
+            dirty = true;
+            return active.id;
+        }
+    }
+
+    /**
+     * segmentId 分段中的记录已有部分提交到 SQLite；写入按追加顺序提交，更早分段中的记录都已提交，可以删除
+     */
+    void markCommitted(long segmentId) {
+        if (segmentId <= committedSegmentId) {
+            return;
+        }
+        committedSegmentId = segmentId;
+        executor.execute(() -> deleteSegmentsBefore(segmentId));
+    }
+
+    /**
+     * 换用备用分段；备用分段尚未就绪时保留已写满的分段，本条记录不写日志，
+     * 追加可能在主线程上调用，不能在这里创建文件。调用时持有 lock
+     */
+    private boolean rollOver() {
+        if (spare == null) {
+            Log.w(TAG, "No spare segment, skipping journal for this record");
+            requestSegmentLocked();
+            return false;
+        }
+        Segment finished = active;
+        active = spare;
+        spare = null;
+        executor.execute(() -> finished.buffer.force());
+        requestSegmentLocked();
+        return true;
+    }
+
+    // 调用时持有 lock
+    private void requestSegmentLocked() {
+        if (!started || preparing) {
+            return;
+        }
+        preparing = true;
+        executor.execute(this::prepareSpare);
+    }
+
+    /**
+     * 在后台创建新分段：没有活动分段（之前创建失败）时直接作为活动分段，否则作为备用分段
+     * 只在日志线程（或恢复时）执行，分段号按创建顺序递增
+     */
+    private void prepareSpare() {
+        long id;
+        synchronized (lock) {
+            if (active != null && spare != null) {
+                preparing = false;
+                return;
+            }
+            id = nextSegmentId++;
+        }
+        // 创建文件在锁外进行，不阻塞追加
+        Segment segment = openSegment(id);
+        synchronized (lock) {
+            preparing = false;
+            if (segment == null) {
+                return;
+            }
+            if (active == null) {
+                active = segment;
+                requestSegmentLocked();
+            } else {
+                spare = segment;
+            }
+        }
+    }
+
+    private Segment openSegment(long id) {
+        File file = segmentFile(id);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(SEGMENT_SIZE);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            buffer.putInt(0, MAGIC);
+            buffer.position(HEADER_SIZE);
+            return new Segment(id, buffer);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to create journal segment " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private void sync() {
+        Segment segment;
+        synchronized (lock) {
+            if (!dirty || active == null) {
+                return;
+            }
+            dirty = false;
+            segment = active;
+        }
+        segment.buffer.force();
+    }
+
+    private void readSegment(File file, List<byte[]> records) {
+        int before = records.size();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = Math.min(raf.length(), SEGMENT_SIZE);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (length < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                Log.w(TAG, "Skipping invalid segment " + file.getName());
+                return;
+            }
+            CRC32 checksum = new CRC32();
+            int position = HEADER_SIZE;
+            while (position + FRAME_HEADER_SIZE <= length) {
+                int size = buffer.getInt(position);
+                if (size <= 0 || position + FRAME_HEADER_SIZE + size > length) {
+                    break;
+                }
+                int expected = buffer.getInt(position + 4);
+                byte[] payload = new byte[size];
+                buffer.position(position + FRAME_HEADER_SIZE);
+                buffer.get(payload);
+                checksum.reset();
+                checksum.update(payload, 0, size);
+                if ((int) checksum.getValue() != expected) {
+                    Log.w(TAG, "Checksum mismatch in " + file.getName() + " at " + position + ", truncating");
+                    break;
+                }
+                records.add(payload);
+                position += FRAME_HEADER_SIZE + size;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read journal segment " + file.getName(), e);
+        }
+        Log.d(TAG, "Recovered " + (records.size() - before) + " records from " + file.getName());
+    }
+
+    private void deleteSegmentsBefore(long segmentId) {
+        for (File file : listSegments()) {
+            if (segmentId(file) < segmentId && !file.delete()) {
+                Log.w(TAG, "Failed to delete journal segment " + file.getName());
+            }
+        }
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format(Locale.US, "%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private File[] listSegments() {
+        File[] files = directory.listFiles((dir, name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(segmentId(a), segmentId(b)));
+        return files;
+    }
+
+    private static long segmentId(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+        final long id;
+        final MappedByteBuffer buffer;
+
+        Segment(long id, MappedByteBuffer buffer) {
+            this.id = id;
+            this.buffer = buffer;
+        }
+    }
+}
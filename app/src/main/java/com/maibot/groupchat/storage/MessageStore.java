@@ -0,0 +1,439 @@
+package com.maibot.groupchat.storage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.maibot.groupchat.model.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 聊天记录存储 - SQLite，每个会话内的消息按序号连续编号，序号即消息在会话中的位置，
+ * 按 (会话, 序号) 主键读取任意一页只需一次索引查找，与会话长度无关
+ * 写入在单独的写线程上进行，积压的写入合并到同一个事务中提交（组提交）；
+ * 尚未提交的写入保存在内存覆盖层中，读取时合并，读到的总是最新内容
+ * 排队的写入同时追加到 {@link MessageJournal}，进程在提交前被杀死时，下次启动先从日志重放再提供读取
+ * 提交失败（如磁盘已满）时保留覆盖层和日志分段，写线程退避后连同新排队的写入一起重试
+ */
+public final class MessageStore {
+
+    private static final String TAG = "MessageStore";
+    private static final String DATABASE_NAME = "chat_history.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final String TABLE = "messages";
+    // 一个事务最多合并的写入数
+    private static final int MAX_BATCH = 256;
+    private static final String JOURNAL_DIR = "message_journal";
+    private static final byte OP_INSERT = 1;
+    private static final byte OP_UPDATE_CONTENT = 2;
+    // 提交失败后的重试间隔，每次失败加倍
+    private static final long COMMIT_RETRY_INITIAL_MS = 500;
+    private static final long COMMIT_RETRY_MAX_MS = 30000;
+    // 序号范围内缺失的行（只有数据丢失时才会出现）用占位消息填充，保持后续消息的位置不变
+    private static final String MISSING_SENDER = "MaiBot";
+    private static final String MISSING_CONTENT = "（这条消息未能保存）";
+
+    private static volatile MessageStore instance;
+
+    private final Helper helper;
+    private final MessageJournal journal;
+    // 日志重放完成前读取会读到旧数据，读取方法先等待它
+    private final CountDownLatch recovered = new CountDownLatch(1);
+    private final BlockingQueue<Write> writes = new LinkedBlockingQueue<>();
+    // 已排队未提交的插入和正文更新，按 会话+序号 索引
+    private final Map<String, Message> pendingInserts = new ConcurrentHashMap<>();
+    private final Map<String, String> pendingContents = new ConcurrentHashMap<>();
+    private final ExecutorService readExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "message-store-read");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private MessageStore(Context context) {
+        helper = new Helper(context.getApplicationContext());
+        journal = new MessageJournal(new File(context.getApplicationContext().getFilesDir(), JOURNAL_DIR));
+        Thread writer = new Thread(this::runWriter, "message-store-write");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static MessageStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (MessageStore.class) {
+                if (instance == null) {
+                    instance = new MessageStore(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 执行读取的线程，读取方法都应在此线程上调用
+     */
+    public ExecutorService getReadExecutor() {
+        return readExecutor;
+    }
+
+    /**
+     * 排队插入一条消息，可在任意线程调用
+     */
+    public void insert(String conversation, int seq, Message message) {
+        Message snapshot = copy(message);
+        String key = key(conversation, seq);
+        pendingInserts.put(key, snapshot);
+        enqueue(new Write(conversation, seq, snapshot, null));
+    }
+
+    /**
+     * 排队更新一条消息的正文，可在任意线程调用
+     */
+    public void updateContent(String conversation, int seq, String content) {
+        String key = key(conversation, seq);
+        pendingContents.put(key, content);
+        enqueue(new Write(conversation, seq, null, content));
+    }
+
+    /**
+     * 会话中的消息数，包括尚未提交的消息；在读线程调用
+     */
+    public int count(String conversation) {
+        awaitRecovered();
+        int count = 0;
+        try (Cursor cursor = helper.getReadableDatabase().rawQuery(
+                "SELECT MAX(seq) FROM " + TABLE + " WHERE conversation = ?", new String[]{conversation})) {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                count = cursor.getInt(0) + 1;
+            }
+        }
+        String prefix = conversation + '\u0000';
+        for (String key : pendingInserts.keySet()) {
+            if (key.startsWith(prefix)) {
+                count = Math.max(count, Integer.parseInt(key.substring(prefix.length())) + 1);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 读取 [fromSeq, toSeq) 范围内的消息，结果按序号排列；在读线程调用
+     */
+    public List<Message> load(String conversation, int fromSeq, int toSeq) {
+        awaitRecovered();
+        Message[] rows = new Message[Math.max(0, toSeq - fromSeq)];
+        try (Cursor cursor = helper.getReadableDatabase().rawQuery(
+                "SELECT seq, type, sender, content, timestamp FROM " + TABLE
+                        + " WHERE conversation = ? AND seq >= ? AND seq < ? ORDER BY seq",
+                new String[]{conversation, String.valueOf(fromSeq), String.valueOf(toSeq)})) {
+            while (cursor.moveToNext()) {
+                rows[cursor.getInt(0) - fromSeq] = new Message(cursor.getInt(1), cursor.getString(2),
+                        cursor.getString(3), cursor.getLong(4));
+            }
+        }
+
+        List<Message> messages = new ArrayList<>(rows.length);
+        long lastTimestamp = 0;
+        for (int i = 0; i < rows.length; i++) {
+            String key = key(conversation, fromSeq + i);
+            Message message = rows[i];
+            if (message == null) {
+                Message pending = pendingInserts.get(key);
+                if (pending == null) {
+                    Log.w(TAG, "Missing message " + (fromSeq + i) + " in " + conversation);
+                    messages.add(new Message(Message.TYPE_BOT, MISSING_SENDER, MISSING_CONTENT, lastTimestamp));
+                    continue;
+                }
+                message = copy(pending);
+            }
+            lastTimestamp = message.getTimestamp();
+            String content = pendingContents.get(key);
+            if (content != null) {
+                message.setContent(content);
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * 追加到日志后排队；两步在同一把锁内完成，队列顺序与日志顺序一致，
+     * 否则先提交的写入可能让日志删除另一个线程尚未提交的分段
+     */
+    private void enqueue(Write write) {
+        byte[] record = encode(write);
+        synchronized (writes) {
+            write.segmentId = record != null ? journal.append(record) : -1;
+            writes.add(write);
+        }
+    }
+
+    private void awaitRecovered() {
+        try {
+            recovered.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 写入按排队顺序提交：一批提交成功后才取下一批，失败时整批保留重试，
+     * 因此每次成功提交都覆盖了之前排队的全部写入，日志可以删除更早的分段
+     */
+    private void runWriter() {
+        List<Write> batch = recover();
+        boolean recoveredPending = !batch.isEmpty();
+        long retryDelayMs = 0;
+        while (true) {
+            if (batch.isEmpty()) {
+                try {
+                    batch.add(writes.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            writes.drainTo(batch, Math.max(0, MAX_BATCH - batch.size()));
+            if (commit(batch)) {
+                if (recoveredPending) {
+                    journal.discardRecovered();
+                    recoveredPending = false;
+                }
+                releaseOverlays(batch);
+                journal.markCommitted(batch.get(batch.size() - 1).segmentId);
+                batch.clear();
+                retryDelayMs = 0;
+                continue;
+            }
+            retryDelayMs = retryDelayMs == 0 ? COMMIT_RETRY_INITIAL_MS : Math.min(retryDelayMs * 2, COMMIT_RETRY_MAX_MS);
+            Log.w(TAG, "Retrying " + batch.size() + " writes in " + retryDelayMs + "ms");
+            try {
+                Thread.sleep(retryDelayMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 重放日志中的全部记录，其中大部分可能已经提交过；插入按主键覆盖、更新写入相同正文，重放是幂等的
+     *
+     * @return 未能提交的记录，由写线程作为第一批重试；期间放入覆盖层，读取时仍能读到
+     */
+    private List<Write> recover() {
+        long start = SystemClock.elapsedRealtime();
+        List<Write> batch = new ArrayList<>();
+        try {
+            List<byte[]> records = journal.recover();
+            for (byte[] record : records) {
+                Write write = decode(record);
+                if (write != null) {
+                    batch.add(write);
+                }
+            }
+            if (batch.isEmpty() || commit(batch)) {
+                journal.discardRecovered();
+                Log.d(TAG, "Replayed " + batch.size() + " journal records in "
+                        + (SystemClock.elapsedRealtime() - start) + "ms");
+                batch.clear();
+            } else {
+                // 旧分段保留到重试成功，之后的提交不会越过这些记录删除它们
+                for (Write write : batch) {
+                    if (write.message != null) {
+                        pendingInserts.put(key(write.conversation, write.seq), write.message);
+                    } else {
+                        pendingContents.put(key(write.conversation, write.seq), write.content);
+                    }
+                }
+            }
+        } finally {
+            recovered.countDown();
+        }
+        return batch;
+    }
+
+    /**
+     * 在一个事务中提交一批写入；打开数据库失败和提交失败（事务在 endTransaction 时才真正提交）都返回 false
+     */
+    private boolean commit(List<Write> batch) {
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                commitInTransaction(db, batch);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to commit " + batch.size() + " writes", e);
+            return false;
+        }
+    }
+
+    private static void commitInTransaction(SQLiteDatabase db, List<Write> batch) {
+        for (Write write : batch) {
+            if (write.message != null) {
+                ContentValues values = new ContentValues();
+                values.put("conversation", write.conversation);
+                values.put("seq", write.seq);
+                values.put("type", write.message.getType());
+                values.put("sender", write.message.getSender());
+                values.put("content", write.message.getContent());
+                values.put("timestamp", write.message.getTimestamp());
+                db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            } else {
+                ContentValues values = new ContentValues();
+                values.put("content", write.content);
+                db.update(TABLE, values, "conversation = ? AND seq = ?",
+                        new String[]{write.conversation, String.valueOf(write.seq)});
+            }
+        }
+    }
+
+    // 提交成功后只移除本批写入的覆盖项，之后又排队的写入仍然保留
+    private void releaseOverlays(List<Write> batch) {
+        for (Write write : batch) {
+            String key = key(write.conversation, write.seq);
+            if (write.message != null) {
+                pendingInserts.remove(key, write.message);
+            } else {
+                pendingContents.remove(key, write.content);
+            }
+        }
+    }
+
+    private static byte[] encode(Write write) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, write.conversation);
+            out.writeInt(write.seq);
+            if (write.message != null) {
+                out.writeByte(OP_INSERT);
+                out.writeInt(write.message.getType());
+                writeString(out, write.message.getSender());
+                writeString(out, write.message.getContent());
+                out.writeLong(write.message.getTimestamp());
+            } else {
+                out.writeByte(OP_UPDATE_CONTENT);
+                writeString(out, write.content);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to encode journal record", e);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Write decode(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            String conversation = readString(in);
+            int seq = in.readInt();
+            byte op = in.readByte();
+            if (op == OP_INSERT) {
+                int type = in.readInt();
+                String sender = readString(in);
+                String content = readString(in);
+                long timestamp = in.readLong();
+                return new Write(conversation, seq, new Message(type, sender, content, timestamp), null);
+            } else if (op == OP_UPDATE_CONTENT) {
+                return new Write(conversation, seq, null, readString(in));
+            }
+            Log.w(TAG, "Unknown journal record op " + op);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to decode journal record", e);
+        }
+        return null;
+    }
+
+    // writeUTF 限制 64KB，长回复会超出，这里用 长度 + UTF-8 字节，null 记为 -1
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String key(String conversation, int seq) {
+        return conversation + '\u0000' + seq;
+    }
+
+    private static Message copy(Message message) {
+        return new Message(message.getType(), message.getSender(), message.getContent(), message.getTimestamp());
+    }
+
+    private static final class Write {
+        final String conversation;
+        final int seq;
+        // 插入时为消息快照，更新正文时为 null
+        final Message message;
+        final String content;
+        // 所在的日志分段，未写入日志时为 -1
+        long segmentId = -1;
+
+        Write(String conversation, int seq, Message message, String content) {
+            this.conversation = conversation;
+            this.seq = seq;
+            this.message = message;
+            this.content = content;
+        }
+    }
+
+    private static final class Helper extends SQLiteOpenHelper {
+
+        Helper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            // 读线程和写线程可以同时访问数据库
+            setWriteAheadLoggingEnabled(true);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            // 主键即 (会话, 序号) 索引，不需要额外的 rowid
+            db.execSQL("CREATE TABLE " + TABLE + " ("
+                    + "conversation TEXT NOT NULL, "
+                    + "seq INTEGER NOT NULL, "
+                    + "type INTEGER NOT NULL, "
+                    + "sender TEXT, "
+                    + "content TEXT, "
+                    + "timestamp INTEGER NOT NULL, "
+                    + "PRIMARY KEY (conversation, seq)) WITHOUT ROWID");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.maibot.groupchat.storage;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.maibot.groupchat.model.Message;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分页的会话消息列表，作为 ChatAdapter 的数据源
+ * 内存中只保留最近访问的几页消息，其余按需从 MessageStore 异步读取；
+ * 尚未读到的位置先返回占位消息，读取完成后通知刷新
+ * 列表末尾可以附加若干个不持久化的加载占位，新消息总是插入在加载占位之前
+ * 只在主线程使用
+ */
+public final class PagedMessageList extends AbstractList<Message> {
+
+    private static final String TAG = "PagedMessageList";
+    private static final int PAGE_SIZE = 50;
+    // 内存中最多保留的页数，内存占用与会话长度无关
+    private static final int MAX_CACHED_PAGES = 6;
+    // 访问位置离页边界小于该距离时预读相邻页
+    private static final int PREFETCH_DISTANCE = 15;
+
+    public interface Listener {
+        /**
+         * 会话已打开，之前返回的数据全部失效
+         */
+        void onOpened();
+
+        /**
+         * [start, start + count) 范围的消息已读到，需要重新绑定
+         */
+        void onRangeLoaded(int start, int count);
+    }
+
+    private final MessageStore store;
+    private final String conversation;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 按访问顺序排列，最久未访问的页在前
+    private final LinkedHashMap<Integer, List<Message>> pages = new LinkedHashMap<>(16, 0.75f, true);
+    // 读取中的页，值为读取期间是否有写入，有则读取结果作废重读
+    private final Map<Integer, Boolean> loadingPages = new HashMap<>();
+    // 只在内存中更新、尚未持久化的正文（流式回复的中间结果），页被淘汰后重新读取时覆盖读到的旧正文
+    private final Map<Integer, String> unsavedContents = new HashMap<>();
+    private final Message pendingMessage = new Message(Message.TYPE_LOADING, "", "加载中...", 0);
+    private final Message loadingMessage = new Message(Message.TYPE_LOADING, "", "加载中...", 0);
+    private Listener listener;
+    private boolean opened;
+    private int count;
+    private int loadingCount;
+
+    public PagedMessageList(MessageStore store, String conversation) {
+        this.store = store;
+        this.conversation = conversation;
+    }
+
+    /**
+     * 异步读取消息总数和最后一页
+     */
+    public void open(Listener listener) {
+        this.listener = listener;
+        store.getReadExecutor().execute(() -> {
+            int total = store.count(conversation);
+            int firstPage = pageOf(Math.max(0, total - PAGE_SIZE));
+            int lastPage = pageOf(Math.max(0, total - 1));
+            Map<Integer, List<Message>> loaded = new LinkedHashMap<>();
+            for (int page = firstPage; page <= lastPage && total > 0; page++) {
+                loaded.put(page, readPage(page, total));
+            }
+            mainHandler.post(() -> {
+                if (this.listener == null) {
+                    return;
+                }
+                count = total;
+                pages.putAll(loaded);
+                opened = true;
+                Log.d(TAG, "Opened " + conversation + " with " + total + " messages");
+                this.listener.onOpened();
+            });
+        });
+    }
+
+    public void close() {
+        listener = null;
+    }
+
+    public boolean isOpened() {
+        return opened;
+    }
+
+    @Override
+    public int size() {
+        return count + loadingCount;
+    }
+
+    /**
+     * 已持久化（及排队持久化）的消息数，不含末尾的加载占位
+     */
+    public int getMessageCount() {
+        return count;
+    }
+
+    public int getLoadingCount() {
+        return loadingCount;
+    }
+
+    @Override
+    public Message get(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + size());
+        }
+        if (position >= count) {
+            return loadingMessage;
+        }
+        int page = pageOf(position);
+        int offset = position - page * PAGE_SIZE;
+        if (offset < PREFETCH_DISTANCE && page > 0) {
+            requestPage(page - 1);
+        } else if (offset >= PAGE_SIZE - PREFETCH_DISTANCE && (page + 1) * PAGE_SIZE < count) {
+            requestPage(page + 1);
+        }
+        List<Message> messages = pages.get(page);
+        if (messages == null || offset >= messages.size()) {
+            requestPage(page);
+            return pendingMessage;
+        }
+        return messages.get(offset);
+    }
+
+    /**
+     * 在加载占位之前追加一条消息并持久化
+     *
+     * @return 消息所在的位置
+     */
+    public int append(Message message) {
+        int position = count++;
+        int page = pageOf(position);
+        List<Message> messages = pages.get(page);
+        if (messages == null) {
+            messages = new ArrayList<>(PAGE_SIZE);
+            pages.put(page, messages);
+        }
+        messages.add(message);
+        markDirty(page);
+        trimCache();
+        store.insert(conversation, position, message);
+        return position;
+    }
+
+    /**
+     * 更新某条消息的正文并持久化
+     */
+    public void updateContent(int position, String content) {
+        unsavedContents.remove(position);
+        setCachedContent(position, content);
+        store.updateContent(conversation, position, content);
+    }
+
+    /**
+     * 只在内存中更新正文，不持久化；流式回复的中间结果使用，结束时再调用 {@link #updateContent} 保存，
+     * 否则每个片段都会把完整正文写一遍
+     */
+    public void updateUnsavedContent(int position, String content) {
+        unsavedContents.put(position, content);
+        setCachedContent(position, content);
+    }
+
+    private void setCachedContent(int position, String content) {
+        int page = pageOf(position);
+        List<Message> messages = pages.get(page);
+        int offset = position - page * PAGE_SIZE;
+        if (messages != null && offset < messages.size()) {
+            messages.get(offset).setContent(content);
+        }
+        markDirty(page);
+    }
+
+    /**
+     * 在末尾添加一个加载占位
+     *
+     * @return 占位所在的位置
+     */
+    public int addLoading() {
+        loadingCount++;
+        return size() - 1;
+    }
+
+    /**
+     * 移除末尾的一个加载占位
+     *
+     * @return 被移除的位置，没有占位时返回 -1
+     */
+    public int removeLoading() {
+        if (loadingCount == 0) {
+            return -1;
+        }
+        loadingCount--;
+        return size();
+    }
+
+    private void requestPage(int page) {
+        if (!opened || pages.containsKey(page) || loadingPages.containsKey(page)) {
+            return;
+        }
+        loadingPages.put(page, false);
+        int total = count;
+        store.getReadExecutor().execute(() -> {
+            List<Message> messages = readPage(page, total);
+            mainHandler.post(() -> onPageLoaded(page, messages));
+        });
+    }
+
+    private void onPageLoaded(int page, List<Message> messages) {
+        Boolean dirty = loadingPages.remove(page);
+        if (listener == null) {
+            return;
+        }
+        if (Boolean.TRUE.equals(dirty)) {
+            // 读取期间有写入，结果可能已过期
+            requestPage(page);
+            return;
+        }
+        int start = page * PAGE_SIZE;
+        for (Map.Entry<Integer, String> unsaved : unsavedContents.entrySet()) {
+            int offset = unsaved.getKey() - start;
+            if (offset >= 0 && offset < messages.size()) {
+                messages.get(offset).setContent(unsaved.getValue());
+            }
+        }
+        pages.put(page, messages);
+        trimCache();
+        listener.onRangeLoaded(start, Math.min(PAGE_SIZE, count - start));
+    }
+
+    private List<Message> readPage(int page, int total) {
+        int from = page * PAGE_SIZE;
+        return store.load(conversation, from, Math.min(from + PAGE_SIZE, total));
+    }
+
+    private void markDirty(int page) {
+        if (loadingPages.containsKey(page)) {
+            loadingPages.put(page, true);
+        }
+    }
+
+    /**
+     * 淘汰最久未访问的页，最后一页总是保留，追加消息时它一定在内存中
+     */
+    private void trimCache() {
+        int lastPage = pageOf(Math.max(0, count - 1));
+        Iterator<Map.Entry<Integer, List<Message>>> iterator = pages.entrySet().iterator();
+        while (pages.size() > MAX_CACHED_PAGES && iterator.hasNext()) {
+            if (iterator.next().getKey() != lastPage) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static int pageOf(int position) {
+        return position / PAGE_SIZE;
+    }
+}
@@ -10,6 +10,10 @@ public class ConfigManager {
     private static final String KEY_API_KEY = "api_key";
     private static final String KEY_BOT_INSTANCES = "bot_instances";
     private static final String KEY_IS_CONFIGURED = "is_configured";
+    private static final String KEY_STREAMING_ENABLED = "streaming_enabled";
+    private static final String KEY_HEDGING_ENABLED = "hedging_enabled";
+    private static final String KEY_MAILBOX_POLICY_PREFIX = "mailbox_policy_";
+    private static final String DEFAULT_MAILBOX_POLICY = "LATEST_WINS";
 
     // 服务器配置
     private static final String KEY_SERVER_HOST = "server_host";
@@ -46,6 +50,12 @@ public class ConfigManager {
         return "http://" + getServerHost() + ":" + getServerPort();
     }
 
+    // 是否为本机服务（本机服务通过Unix域套接字访问）
+    public boolean isLocalServer() {
+        String host = getServerHost();
+        return DEFAULT_SERVER_HOST.equals(host) || "localhost".equalsIgnoreCase(host);
+    }
+
     // API提供商
     public String getApiProvider() {
         return sharedPreferences.getString(KEY_API_PROVIDER, "DeepSeek");
@@ -82,6 +92,33 @@ public class ConfigManager {
         sharedPreferences.edit().putBoolean(KEY_IS_CONFIGURED, configured).apply();
     }
 
+    // 是否使用流式回复
+    public boolean isStreamingEnabled() {
+        return sharedPreferences.getBoolean(KEY_STREAMING_ENABLED, true);
+    }
+
+    public void setStreamingEnabled(boolean enabled) {
+        sharedPreferences.edit().putBoolean(KEY_STREAMING_ENABLED, enabled).apply();
+    }
+
+    // 是否对慢请求发送对冲请求（会增加服务端负载，默认关闭）
+    public boolean isHedgingEnabled() {
+        return sharedPreferences.getBoolean(KEY_HEDGING_ENABLED, false);
+    }
+
+    public void setHedgingEnabled(boolean enabled) {
+        sharedPreferences.edit().putBoolean(KEY_HEDGING_ENABLED, enabled).apply();
+    }
+
+    // 机器人忙时新消息的处理策略，按机器人名称分别保存
+    public String getMailboxPolicy(String botName) {
+        return sharedPreferences.getString(KEY_MAILBOX_POLICY_PREFIX + botName, DEFAULT_MAILBOX_POLICY);
+    }
+
+    public void setMailboxPolicy(String botName, String policy) {
+        sharedPreferences.edit().putString(KEY_MAILBOX_POLICY_PREFIX + botName, policy).apply();
+    }
+
     // 清除配置
     public void clearConfig() {
         sharedPreferences.edit().clear().apply();
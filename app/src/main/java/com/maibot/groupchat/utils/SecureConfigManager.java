@@ -39,12 +39,22 @@ public class SecureConfigManager {
     private static final String KEY_IS_CONFIGURED = "is_configured";
     private static final String KEY_SERVER_HOST = "server_host";
     private static final String KEY_SERVER_PORT = "server_port";
+    private static final String KEY_TRANSPORT_MODE = "transport_mode";
+    private static final String KEY_BOT_IDLE_TTL_MINUTES = "bot_idle_ttl_minutes";
+    private static final String KEY_RATE_LIMIT_RPM = "rate_limit_rpm";
+    private static final String KEY_RATE_LIMIT_TPM = "rate_limit_tpm";
+
+    // 传输模式：auto 本地服务走进程内桥接、远程服务走HTTP；http/direct 强制指定（用于对比测试）
+    public static final String TRANSPORT_AUTO = "auto";
+    public static final String TRANSPORT_HTTP = "http";
+    public static final String TRANSPORT_DIRECT = "direct";
 
     // 默认值
     private static final String DEFAULT_SERVER_HOST = "127.0.0.1";
     private static final int DEFAULT_SERVER_PORT = 8000;
     private static final String DEFAULT_API_PROVIDER = "DeepSeek";
     private static final int DEFAULT_BOT_INSTANCES = 3;
+    private static final int DEFAULT_BOT_IDLE_TTL_MINUTES = 10;
 
     private final SharedPreferences sharedPreferences;
     private KeyStore keyStore;
@@ -210,6 +220,64 @@ public class SecureConfigManager {
         return "http://" + getServerHost() + ":" + getServerPort();
     }
 
+    public boolean isLocalServer() {
+        String host = getServerHost();
+        return DEFAULT_SERVER_HOST.equals(host) || "localhost".equalsIgnoreCase(host);
+    }
+
+    public String getTransportMode() {
+        return sharedPreferences.getString(KEY_TRANSPORT_MODE, TRANSPORT_AUTO);
+    }
+
+    public void setTransportMode(String mode) {
+        sharedPreferences.edit().putString(KEY_TRANSPORT_MODE, mode).apply();
+    }
+
+    /**
+     * 是否使用进程内Python桥接，只有远程服务才需要HTTP
+     */
+    public boolean useDirectTransport() {
+        String mode = getTransportMode();
+        if (TRANSPORT_DIRECT.equals(mode)) {
+            return true;
+        }
+        return TRANSPORT_AUTO.equals(mode) && isLocalServer();
+    }
+
+    /**
+     * 机器人空闲多久后释放其客户端和Python侧会话，下次收到消息时重新创建
+     */
+    public int getBotIdleTtlMinutes() {
+        return sharedPreferences.getInt(KEY_BOT_IDLE_TTL_MINUTES, DEFAULT_BOT_IDLE_TTL_MINUTES);
+    }
+
+    public void setBotIdleTtlMinutes(int minutes) {
+        sharedPreferences.edit().putInt(KEY_BOT_IDLE_TTL_MINUTES, Math.max(1, minutes)).apply();
+    }
+
+    /**
+     * 当前提供商每分钟允许的模型调用次数，0 表示不限速
+     * 各提供商和账户档位的限额不同，只在用户填写后才按额度错开发送
+     */
+    public int getRateLimitRequestsPerMinute() {
+        return sharedPreferences.getInt(KEY_RATE_LIMIT_RPM, 0);
+    }
+
+    public void setRateLimitRequestsPerMinute(int requests) {
+        sharedPreferences.edit().putInt(KEY_RATE_LIMIT_RPM, Math.max(0, requests)).apply();
+    }
+
+    /**
+     * 当前提供商每分钟允许的token数，0 表示不限速
+     */
+    public int getRateLimitTokensPerMinute() {
+        return sharedPreferences.getInt(KEY_RATE_LIMIT_TPM, 0);
+    }
+
+    public void setRateLimitTokensPerMinute(int tokens) {
+        sharedPreferences.edit().putInt(KEY_RATE_LIMIT_TPM, Math.max(0, tokens)).apply();
+    }
+
     /**
      * 清除所有配置
      */
@@ -10,7 +10,14 @@ import threading
 import time
 import asyncio
 from pathlib import Path
-from typing import Optional, Dict, Any
+from typing import Optional, Dict, Any, List
+
+import warm_cache
+
+try:
+    import msgpack
+except ImportError:
+    msgpack = None
 
 # 设置环境变量
 os.environ['MAIBOT_ANDROID'] = '1'
@@ -19,6 +26,18 @@ os.environ['PORT'] = '8000'
 os.environ['WEBUI_HOST'] = '127.0.0.1'
 os.environ['WEBUI_PORT'] = '8001'
 
+# 聊天协议支持的格式：MessagePack优先，JSON兜底
+MSGPACK_MEDIA_TYPE = "application/x-msgpack"
+NDJSON_MEDIA_TYPE = "application/x-ndjson"
+
+# 非流式请求检测客户端断开的轮询间隔（秒）
+DISCONNECT_POLL_INTERVAL = 0.2
+
+# 机器人会话空闲多久后释放（秒），Java层启动时按设置覆盖
+DEFAULT_BOT_IDLE_TTL = 600
+# 请求中没有指定机器人时使用的会话
+DEFAULT_BOT_ID = "default"
+
 # 获取Android应用数据目录
 def get_android_data_dir():
     """获取Android应用数据目录"""
@@ -61,6 +80,18 @@ class MaiBotAndroidServer:
         self.main_system = None
         self.fastapi_app = None
         self.configured = False
+        self.bridge_loop: Optional[asyncio.AbstractEventLoop] = None
+        self.bridge_thread: Optional[threading.Thread] = None
+        # 机器人会话：bot_id -> [BrainChat, 最近使用时间]，首次使用时创建，空闲超时后释放
+        self.bot_sessions: Dict[str, List[Any]] = {}
+        self.bot_idle_ttl = DEFAULT_BOT_IDLE_TTL
+        # 就绪信号：HTTP模式下uvicorn绑定套接字且应用加载完成、桥接模式下事件循环开始运行时置位，
+        # 启动失败时同样置位并记录原因，等待方不会一直阻塞
+        self.ready_event = threading.Event()
+        self.start_error: Optional[str] = None
+        # 就绪之后意外退出的原因，以及通知Java层的监听器（实现 onServerExit(reason)）
+        self.exit_reason: Optional[str] = None
+        self.exit_listener = None
         
     def initialize_config(self, api_provider: str, api_key: str, instance_count: int = 3) -> bool:
         """初始化配置文件"""
@@ -154,8 +185,20 @@ class MaiBotAndroidServer:
         }
         return models.get(provider, "deepseek-chat")
     
-    def start(self) -> bool:
-        """启动MaiBot服务和FastAPI服务器"""
+    def _prepare_paths(self):
+        """添加MaiBot src到Python路径"""
+        src_path = MAIBOT_DIR / "src"
+        if str(src_path) not in sys.path:
+            sys.path.insert(0, str(src_path))
+        
+        if str(MAIBOT_DIR) not in sys.path:
+            sys.path.insert(0, str(MAIBOT_DIR))
+    
+    def start(self, uds_path: Optional[str] = None) -> bool:
+        """
+        启动MaiBot服务和FastAPI服务器
+        指定uds_path时只绑定该Unix域套接字，不监听TCP端口
+        """
         if self.is_running:
             return True
         
@@ -164,16 +207,15 @@ class MaiBotAndroidServer:
             return False
         
         try:
-            # 添加MaiBot src到Python路径
-            src_path = MAIBOT_DIR / "src"
-            if str(src_path) not in sys.path:
-                sys.path.insert(0, str(src_path))
-            
-            if str(MAIBOT_DIR) not in sys.path:
-                sys.path.insert(0, str(MAIBOT_DIR))
+            self._prepare_paths()
+            self._reset_ready()
             
             # 启动FastAPI服务器
-            self.server_thread = threading.Thread(target=self._run_fastapi_server, daemon=True)
+            self.server_thread = threading.Thread(
+                target=self._run_fastapi_server,
+                args=(uds_path,),
+                daemon=True
+            )
             self.server_thread.start()
             self.is_running = True
             
@@ -186,11 +228,154 @@ class MaiBotAndroidServer:
             traceback.print_exc()
             return False
     
-    def _run_fastapi_server(self):
+    def start_bridge(self) -> bool:
+        """启动进程内桥接模式：不启动HTTP服务器，消息由Java层直接调用处理"""
+        if self.is_running:
+            return True
+        
+        if not self.configured:
+            print("错误：未初始化配置，请先调用initialize_config()")
+            return False
+        
+        try:
+            self._prepare_paths()
+            self._reset_ready()
+            loop = self._ensure_bridge_loop()
+            self.is_running = True
+            # 回调在事件循环真正开始运行后才会执行
+            loop.call_soon_threadsafe(self._mark_ready)
+            
+            print("MaiBot桥接模式启动成功")
+            return True
+            
+        except Exception as e:
+            print(f"启动MaiBot桥接模式失败: {e}")
+            import traceback
+            traceback.print_exc()
+            return False
+    
+    def _reset_ready(self):
+        self.start_error = None
+        self.exit_reason = None
+        self.ready_event.clear()
+    
+    def _mark_ready(self, error: Optional[str] = None):
+        """发出就绪信号；error 不为空表示启动失败"""
+        if self.ready_event.is_set():
+            return
+        if error is not None:
+            self.start_error = error
+            self.is_running = False
+            print(f"MaiBot服务未能就绪: {error}")
+        else:
+            # 服务可用后再预加载，不与启动争抢
+            warm_cache.preload()
+        self.ready_event.set()
+    
+    def _mark_stopped(self, reason: str):
+        """
+        服务线程退出时调用：就绪前退出按启动失败处理；
+        就绪后退出且不是 stop() 发起的，记录原因、清除运行标记并通知Java层
+        """
+        if not self.ready_event.is_set():
+            self._mark_ready(reason)
+            return
+        if not self.is_running:
+            return
+        self.is_running = False
+        self.exit_reason = reason
+        print(f"MaiBot服务意外退出: {reason}")
+        listener = self.exit_listener
+        if listener is not None:
+            try:
+                listener.onServerExit(reason)
+            except Exception as e:
+                print(f"通知服务退出失败: {e}")
+    
+    def set_exit_listener(self, listener):
+        self.exit_listener = listener
+    
+    def wait_until_ready(self, timeout: float) -> bool:
+        """
+        阻塞等待服务就绪，最多等待timeout秒
+        返回服务是否可以处理请求；超时或启动失败返回False
+        """
+        if not self.ready_event.wait(timeout):
+            return False
+        return self.start_error is None
+    
+    def _ensure_bridge_loop(self) -> asyncio.AbstractEventLoop:
+        """获取桥接模式使用的事件循环，首次调用时在后台线程中启动"""
+        if self.bridge_loop is None:
+            loop = asyncio.new_event_loop()
+            self.bridge_thread = threading.Thread(
+                target=self._run_bridge_loop,
+                args=(loop,),
+                name="maibot-bridge-loop",
+                daemon=True
+            )
+            self.bridge_thread.start()
+            self.bridge_loop = loop
+        return self.bridge_loop
+    
+    def _run_bridge_loop(self, loop: asyncio.AbstractEventLoop):
+        try:
+            loop.run_forever()
+        except BaseException as e:
+            print(f"桥接事件循环运行错误: {e!r}")
+        finally:
+            if self.bridge_loop is loop:
+                self.bridge_loop = None
+            self._mark_stopped("桥接事件循环已退出")
+    
+    def submit_direct(self, message: str, bot_ids, stream: bool, callback):
+        """
+        进程内处理消息，不经过HTTP
+        结果通过Java回调对象的 onPartial(bot_id, text) / onReply(bot_id, reply) 返回，
+        每个机器人的 onReply 只调用一次；返回可用于取消的Future
+        """
+        bot_ids = [str(bot_id) for bot_id in bot_ids]
+        coro = self._direct_chat(message, bot_ids, bool(stream), callback)
+        return asyncio.run_coroutine_threadsafe(coro, self._ensure_bridge_loop())
+    
+    async def _direct_chat(self, message: str, bot_ids: List[str], stream: bool, callback):
+        """桥接模式下的消息处理，上下文只构建一次"""
+        try:
+            context = self._build_context(message, "android_user", "default")
+        except Exception as e:
+            print(f"桥接模式构建上下文失败: {e}")
+            for bot_id in bot_ids:
+                callback.onReply(bot_id, "")
+            return
+        
+        async def run(bot_id: str):
+            try:
+                if stream:
+                    parts = []
+                    async for delta in self._generate_reply_stream(context, bot_id):
+                        parts.append(delta)
+                        callback.onPartial(bot_id, "".join(parts))
+                    callback.onReply(bot_id, "".join(parts))
+                else:
+                    callback.onReply(bot_id, await self._generate_reply(context, bot_id))
+            except Exception as e:
+                print(f"桥接模式处理消息失败: {e}")
+                import traceback
+                traceback.print_exc()
+                callback.onReply(bot_id, "")
+        
+        await asyncio.gather(*[run(bot_id) for bot_id in bot_ids])
+    
+    def is_bridge_ready(self) -> bool:
+        """检查桥接模式是否可用"""
+        return self.is_running and self.bridge_loop is not None and self.bridge_loop.is_running()
+    
+    def _run_fastapi_server(self, uds_path: Optional[str] = None):
         """运行FastAPI服务器"""
         try:
             import uvicorn
-            from fastapi import FastAPI, HTTPException
+            from fastapi import FastAPI, Request
+            from fastapi.responses import Response, StreamingResponse
             from fastapi.middleware.cors import CORSMiddleware
             from pydantic import BaseModel
             
@@ -206,17 +391,8 @@ class MaiBotAndroidServer:
                 allow_headers=["*"],
             )
             
-            # 请求模型
-            class ChatRequest(BaseModel):
-                message: str
-                user_id: Optional[str] = "android_user"
-                conversation_id: Optional[str] = "default"
-            
-            class ChatResponse(BaseModel):
-                reply: str
-                success: bool
-                error: Optional[str] = None
-            
+            # 聊天端点的请求体按 Content-Type 解码后手工校验，不经过pydantic模型，
+            # 响应按 Accept 选择MessagePack或JSON编码
             class HealthResponse(BaseModel):
                 status: str
                 version: str
@@ -232,67 +408,242 @@ class MaiBotAndroidServer:
                 )
             
             # 聊天端点
-            @self.fastapi_app.post("/api/chat", response_model=ChatResponse)
-            async def chat(request: ChatRequest):
+            @self.fastapi_app.post("/api/chat")
+            async def chat(http_request: Request):
+                data = await _read_payload(http_request)
+                message, user_id, conversation_id = _parse_chat_payload(data)
+                binary = _accepts_msgpack(http_request)
                 try:
-                    # 调用MaiBot核心处理消息
-                    reply = await self._process_message(
-                        request.message, 
-                        request.user_id,
-                        request.conversation_id
+                    # 调用MaiBot核心处理消息，客户端取消请求时随之取消
+                    reply = await _cancel_on_disconnect(
+                        http_request,
+                        self._process_message(message, user_id, conversation_id)
                     )
-                    return ChatResponse(reply=reply, success=True)
+                    return _encode_response({"reply": reply, "success": True, "error": None}, binary)
+                except ClientDisconnected:
+                    raise
                 except Exception as e:
                     print(f"处理消息失败: {e}")
                     import traceback
                     traceback.print_exc()
-                    return ChatResponse(
-                        reply="",
-                        success=False,
-                        error=str(e)
-                    )
+                    return _encode_response({"reply": "", "success": False, "error": str(e)}, binary)
+            
+            # 批量聊天端点：同一条消息只构建一次上下文，各机器人并发生成回复
+            @self.fastapi_app.post("/api/chat/batch")
+            async def chat_batch(http_request: Request):
+                data = await _read_payload(http_request)
+                message, user_id, conversation_id = _parse_chat_payload(data)
+                bot_ids = _parse_bot_ids(data)
+                binary = _accepts_msgpack(http_request)
+                try:
+                    context = self._build_context(message, user_id, conversation_id)
+                    results = await _cancel_on_disconnect(http_request, asyncio.gather(
+                        *[self._generate_reply(context, bot_id) for bot_id in bot_ids],
+                        return_exceptions=True
+                    ))
+                    replies = []
+                    for bot_id, result in zip(bot_ids, results):
+                        if isinstance(result, Exception):
+                            replies.append({"bot_id": bot_id, "reply": "", "success": False, "error": str(result)})
+                        else:
+                            replies.append({"bot_id": bot_id, "reply": result, "success": True, "error": None})
+                    return _encode_response({"replies": replies, "success": True, "error": None}, binary)
+                except ClientDisconnected:
+                    raise
+                except Exception as e:
+                    print(f"批量处理消息失败: {e}")
+                    import traceback
+                    traceback.print_exc()
+                    return _encode_response({"replies": [], "success": False, "error": str(e)}, binary)
+            
+            # 客户端已断开，响应不会被读取，直接结束请求
+            @self.fastapi_app.exception_handler(ClientDisconnected)
+            async def client_disconnected(http_request: Request, exc: ClientDisconnected):
+                return Response(status_code=499)
+            
+            # 流式聊天端点：逐段返回回复，JSON格式为NDJSON，每行一个帧
+            # StreamingResponse 会监听客户端断开并取消生成器，生成中的模型请求随之取消
+            @self.fastapi_app.post("/api/chat/stream")
+            async def chat_stream(http_request: Request):
+                data = await _read_payload(http_request)
+                message, user_id, conversation_id = _parse_chat_payload(data)
+                binary = _accepts_msgpack(http_request)
+                
+                async def frames():
+                    try:
+                        context = self._build_context(message, user_id, conversation_id)
+                        parts = []
+                        async for delta in self._generate_reply_stream(context):
+                            parts.append(delta)
+                            yield _encode_frame({"type": "delta", "text": delta}, binary)
+                        yield _encode_frame({"type": "done", "reply": "".join(parts)}, binary)
+                    except Exception as e:
+                        print(f"流式处理消息失败: {e}")
+                        import traceback
+                        traceback.print_exc()
+                        yield _encode_frame({"type": "error", "error": str(e)}, binary)
+                
+                return StreamingResponse(frames(), media_type=_stream_media_type(binary))
+            
+            # 批量流式端点：多个机器人的帧复用同一个响应流，以bot_id区分
+            @self.fastapi_app.post("/api/chat/batch/stream")
+            async def chat_batch_stream(http_request: Request):
+                data = await _read_payload(http_request)
+                message, user_id, conversation_id = _parse_chat_payload(data)
+                bot_ids = _parse_bot_ids(data)
+                binary = _accepts_msgpack(http_request)
+                
+                async def frames():
+                    try:
+                        context = self._build_context(message, user_id, conversation_id)
+                    except Exception as e:
+                        print(f"批量流式处理消息失败: {e}")
+                        for bot_id in bot_ids:
+                            yield _encode_frame({"type": "error", "bot_id": bot_id, "error": str(e)}, binary)
+                        return
+                    
+                    queue: asyncio.Queue = asyncio.Queue()
+                    
+                    async def produce(bot_id: str):
+                        parts = []
+                        try:
+                            async for delta in self._generate_reply_stream(context, bot_id):
+                                parts.append(delta)
+                                await queue.put({"type": "delta", "bot_id": bot_id, "text": delta})
+                            await queue.put({"type": "done", "bot_id": bot_id, "reply": "".join(parts)})
+                        except Exception as e:
+                            await queue.put({"type": "error", "bot_id": bot_id, "error": str(e)})
+                    
+                    tasks = [asyncio.create_task(produce(bot_id)) for bot_id in bot_ids]
+                    remaining = len(tasks)
+                    try:
+                        while remaining > 0:
+                            frame = await queue.get()
+                            if frame["type"] != "delta":
+                                remaining -= 1
+                            yield _encode_frame(frame, binary)
+                    finally:
+                        for task in tasks:
+                            task.cancel()
+                
+                return StreamingResponse(frames(), media_type=_stream_media_type(binary))
             
             # 启动uvicorn服务器
-            uvicorn.run(
-                self.fastapi_app,
-                host="127.0.0.1",
-                port=8000,
-                log_level="info",
-                access_log=False
-            )
+            if uds_path:
+                # 清理上次进程遗留的套接字文件，否则绑定会失败
+                if os.path.exists(uds_path):
+                    os.unlink(uds_path)
+                config = uvicorn.Config(
+                    self.fastapi_app,
+                    uds=uds_path,
+                    log_level="info",
+                    access_log=False
+                )
+            else:
+                config = uvicorn.Config(
+                    self.fastapi_app,
+                    host="127.0.0.1",
+                    port=8000,
+                    log_level="info",
+                    access_log=False
+                )
             
-        except Exception as e:
-            print(f"FastAPI服务器运行错误: {e}")
+            owner = self
+            
+            class ReadySignallingServer(uvicorn.Server):
+                """套接字绑定、lifespan启动完成后发出就绪信号"""
+                
+                async def startup(self, sockets=None):
+                    await super().startup(sockets=sockets)
+                    if self.started:
+                        owner._mark_ready()
+            
+            ReadySignallingServer(config).run()
+            
+        except BaseException as e:
+            # 绑定失败时uvicorn以SystemExit退出，同样需要通知等待方
+            print(f"FastAPI服务器运行错误: {e!r}")
             import traceback
             traceback.print_exc()
+        finally:
+            self._mark_stopped("服务器已退出")
+    
+    def _build_context(self, message: str, user_id: str, conversation_id: str) -> Dict[str, Any]:
+        """构建聊天上下文（聊天流和消息对象），批量请求中所有机器人共享"""
+        # 导入MaiBot核心
+        from src.chat.message_receive.message import Message as MaiMessage
+        from src.chat.message_receive.chat_stream import ChatStream
+        
+        # 创建聊天流
+        chat_stream = ChatStream(
+            platform="android",
+            user_id=user_id,
+            group_id=conversation_id
+        )
+        
+        # 创建消息对象
+        msg = MaiMessage(
+            message=message,
+            chat_stream=chat_stream,
+            sender_info={"user_id": user_id, "nickname": "用户"}
+        )
+        
+        return {"chat_stream": chat_stream, "message": msg}
+    
+    def _get_brain_chat(self, bot_id: str):
+        """获取机器人的会话，不存在（或已被释放）时创建"""
+        from src.chat.brain_chat.brain_chat import BrainChat
+        
+        now = time.monotonic()
+        self.release_idle_sessions(now)
+        session = self.bot_sessions.get(bot_id)
+        if session is None:
+            session = [BrainChat(), now]
+            self.bot_sessions[bot_id] = session
+        session[1] = now
+        return session[0]
+    
+    def release_idle_sessions(self, now: Optional[float] = None):
+        """释放空闲超过期限的机器人会话，常驻内存只随活跃的机器人数量增长"""
+        if now is None:
+            now = time.monotonic()
+        expired = [bot_id for bot_id, (_, last_used) in list(self.bot_sessions.items())
+                   if now - last_used > self.bot_idle_ttl]
+        for bot_id in expired:
+            self.bot_sessions.pop(bot_id, None)
+        if expired:
+            print(f"释放空闲机器人会话: {', '.join(expired)}")
+    
+    def set_bot_idle_ttl(self, seconds: int):
+        """设置机器人会话的空闲期限（秒）"""
+        self.bot_idle_ttl = max(1, int(seconds))
+    
+    async def _generate_reply(self, context: Dict[str, Any], bot_id: str = DEFAULT_BOT_ID) -> str:
+        """基于已构建的上下文为单个机器人生成回复"""
+        # 处理消息并获取回复
+        brain_chat = self._get_brain_chat(bot_id)
+        reply = await brain_chat.process_message(context["message"])
+        
+        return reply if reply else "抱歉，我现在无法回复。"
+    
+    async def _generate_reply_stream(self, context: Dict[str, Any], bot_id: str = DEFAULT_BOT_ID):
+        """逐段生成回复；MaiBot核心不支持流式输出时一次性返回完整回复"""
+        brain_chat = self._get_brain_chat(bot_id)
+        process_stream = getattr(brain_chat, "process_message_stream", None)
+        if process_stream is None:
+            reply = await brain_chat.process_message(context["message"])
+            yield reply if reply else "抱歉，我现在无法回复。"
+            return
+        
+        async for delta in process_stream(context["message"]):
+            if delta:
+                yield delta
     
     async def _process_message(self, message: str, user_id: str, conversation_id: str) -> str:
         """处理用户消息并返回回复"""
         try:
-            # 导入MaiBot核心
-            from src.chat.message_receive.message import Message as MaiMessage
-            from src.chat.message_receive.chat_stream import ChatStream
-            from src.chat.brain_chat.brain_chat import BrainChat
-            
-            # 创建聊天流
-            chat_stream = ChatStream(
-                platform="android",
-                user_id=user_id,
-                group_id=conversation_id
-            )
-            
-            # 创建消息对象
-            msg = MaiMessage(
-                message=message,
-                chat_stream=chat_stream,
-                sender_info={"user_id": user_id, "nickname": "用户"}
-            )
-            
-            # 处理消息并获取回复
-            brain_chat = BrainChat()
-            reply = await brain_chat.process_message(msg)
-            
-            return reply if reply else "抱歉，我现在无法回复。"
+            context = self._build_context(message, user_id, conversation_id)
+            return await self._generate_reply(context)
             
         except Exception as e:
             print(f"处理消息异常: {e}")
@@ -307,6 +658,12 @@ class MaiBotAndroidServer:
         
         try:
             self.is_running = False
+            
+            # 停止桥接事件循环
+            if self.bridge_loop is not None:
+                self.bridge_loop.call_soon_threadsafe(self.bridge_loop.stop)
+                self.bridge_loop = None
+            
             print("MaiBot服务已停止")
             
         except Exception as e:
@@ -319,6 +676,114 @@ class MaiBotAndroidServer:
         return self.is_running
 
 
+def _ndjson(frame: Dict[str, Any]) -> str:
+    """将一个流式帧编码为NDJSON行"""
+    return json.dumps(frame, ensure_ascii=False) + "\n"
+
+
+class ClientDisconnected(Exception):
+    """客户端在回复生成完成前断开了连接"""
+
+
+async def _cancel_on_disconnect(request, awaitable):
+    """
+    等待协程完成，期间轮询客户端连接状态
+    Java端取消请求会直接关闭连接，此时取消协程，连带取消上游LLM请求，避免浪费API额度
+    """
+    task = asyncio.ensure_future(awaitable)
+    try:
+        while True:
+            done, _ = await asyncio.wait({task}, timeout=DISCONNECT_POLL_INTERVAL)
+            if done:
+                return task.result()
+            if await request.is_disconnected():
+                print("客户端已断开，取消消息处理")
+                raise ClientDisconnected()
+    finally:
+        if not task.done():
+            task.cancel()
+
+
+def _accepts_msgpack(request) -> bool:
+    """客户端是否接受MessagePack格式的响应"""
+    return msgpack is not None and MSGPACK_MEDIA_TYPE in request.headers.get("accept", "")
+
+
+async def _read_payload(request) -> Dict[str, Any]:
+    """按 Content-Type 解码请求体，MessagePack和JSON使用相同的字段结构"""
+    from fastapi import HTTPException
+    
+    body = await request.body()
+    content_type = request.headers.get("content-type", "")
+    try:
+        if content_type.startswith(MSGPACK_MEDIA_TYPE):
+            if msgpack is None:
+                raise HTTPException(status_code=415, detail="服务端不支持MessagePack")
+            data = msgpack.unpackb(body, raw=False)
+        else:
+            data = json.loads(body) if body else {}
+    except ValueError as e:
+        raise HTTPException(status_code=422, detail=f"请求体格式错误: {e}")
+    if not isinstance(data, dict):
+        raise HTTPException(status_code=422, detail="请求体必须是对象")
+    return data
+
+
+def _parse_chat_payload(data: Dict[str, Any]):
+    """校验聊天请求字段，返回 (message, user_id, conversation_id)"""
+    return (
+        _require_str(data, "message"),
+        _require_str(data, "user_id", "android_user"),
+        _require_str(data, "conversation_id", "default"),
+    )
+
+
+def _parse_bot_ids(data: Dict[str, Any]) -> List[str]:
+    """校验批量请求的 bots 字段，返回机器人ID列表"""
+    from fastapi import HTTPException
+    
+    bots = data.get("bots")
+    if not isinstance(bots, list):
+        raise HTTPException(status_code=422, detail="字段 bots 无效")
+    bot_ids = []
+    for bot in bots:
+        if not isinstance(bot, dict) or not isinstance(bot.get("bot_id"), str):
+            raise HTTPException(status_code=422, detail="字段 bot_id 无效")
+        bot_ids.append(bot["bot_id"])
+    return bot_ids
+
+
+def _require_str(data: Dict[str, Any], key: str, default: Optional[str] = None) -> str:
+    from fastapi import HTTPException
+    
+    value = data.get(key)
+    if value is None:
+        value = default
+    if not isinstance(value, str):
+        raise HTTPException(status_code=422, detail=f"字段 {key} 无效")
+    return value
+
+
+def _encode_response(payload: Dict[str, Any], binary: bool):
+    """按协商结果编码非流式响应"""
+    from fastapi.responses import JSONResponse, Response
+    
+    if binary:
+        return Response(content=msgpack.packb(payload, use_bin_type=True), media_type=MSGPACK_MEDIA_TYPE)
+    return JSONResponse(content=payload)
+
+
+def _encode_frame(frame: Dict[str, Any], binary: bool):
+    """按协商结果编码一个流式帧，MessagePack对象自带长度，直接拼接即可"""
+    if binary:
+        return msgpack.packb(frame, use_bin_type=True)
+    return _ndjson(frame)
+
+
+def _stream_media_type(binary: bool) -> str:
+    return MSGPACK_MEDIA_TYPE if binary else NDJSON_MEDIA_TYPE
+
+
 def get_server() -> MaiBotAndroidServer:
     """获取服务器实例（单例模式）"""
     global _server_instance
@@ -333,10 +798,57 @@ def initialize_config(api_provider: str, api_key: str, instance_count: int = 3)
     return server.initialize_config(api_provider, api_key, instance_count)
 
 
-def start_server() -> bool:
-    """启动服务器"""
+def start_server(uds_path: Optional[str] = None) -> bool:
+    """启动服务器，指定uds_path时通过Unix域套接字提供服务"""
+    server = get_server()
+    return server.start(uds_path)
+
+
+def start_bridge() -> bool:
+    """启动进程内桥接模式"""
+    server = get_server()
+    return server.start_bridge()
+
+
+def prepare_warm_cache(version_key: str) -> bool:
+    """启用预热缓存（供Java层在导入MaiBot模块之前调用），version_key 随应用版本变化"""
+    return warm_cache.prepare(DATA_DIR, MAIBOT_DIR, version_key) is not None
+
+
+def set_exit_listener(listener):
+    """设置服务就绪后意外退出时的监听器（供Java层调用），listener.onServerExit(reason) 在服务线程上回调"""
+    server = get_server()
+    server.set_exit_listener(listener)
+
+
+def wait_until_ready(timeout: float) -> bool:
+    """等待服务就绪（供Java层在后台线程调用），超时或启动失败返回False"""
+    server = get_server()
+    return server.wait_until_ready(timeout)
+
+
+def chat_direct(message: str, bot_ids, stream: bool, callback):
+    """进程内直接处理消息（供Java层调用），结果通过callback返回"""
+    server = get_server()
+    return server.submit_direct(message, bot_ids, stream, callback)
+
+
+def is_bridge_ready() -> bool:
+    """检查桥接模式是否可用"""
+    server = get_server()
+    return server.is_bridge_ready()
+
+
+def set_bot_idle_ttl(seconds: int):
+    """设置机器人会话的空闲期限（供Java层调用）"""
+    server = get_server()
+    server.set_bot_idle_ttl(seconds)
+
+
+def release_idle_bots():
+    """释放空闲超时的机器人会话（供Java层定期调用）"""
     server = get_server()
-    return server.start()
+    server.release_idle_sessions()
 
 
 def stop_server():
@@ -0,0 +1,159 @@
+"""
+MaiBot Android 预热缓存
+- 字节码：sys.pycache_prefix 指向按应用版本区分的缓存目录，首次运行时在后台预编译MaiBot源码树，
+  之后的启动直接加载已编译的字节码；应用更新后旧版本的缓存目录被删除
+- 派生数据：jieba前缀词典缓存和汉字频率表保存在数据目录，跨启动保留
+- 预加载：服务就绪后在后台导入重型模块，首条消息不再承担导入耗时
+"""
+
+import compileall
+import importlib
+import os
+import re
+import shutil
+import sys
+import threading
+import time
+from pathlib import Path
+from typing import List, Optional
+
+CACHE_DIR_NAME = "warm_cache"
+# 预编译完成后写入的标记文件，中途被杀死时下次启动重新编译
+COMPLETE_MARKER = ".complete"
+JIEBA_CACHE_FILE = "jieba.cache"
+
+# 处理第一条消息时才会导入的重型模块，按依赖顺序排列
+PRELOAD_MODULES: List[str] = [
+    "numpy",
+    "jieba",
+    "faiss",
+    "src.chat.message_receive.message",
+    "src.chat.message_receive.chat_stream",
+    "src.chat.brain_chat.brain_chat",
+]
+
+# MaiBot按相对路径读写的派生数据，随源码树附带一份，首次运行时复制到工作目录
+DERIVED_DATA_FILES: List[str] = [
+    "depends-data/char_frequency.json",
+]
+
+_preload_lock = threading.Lock()
+_preload_started = False
+# jieba前缀词典缓存所在目录，由prepare()记录，预加载时导入jieba后再设置
+_jieba_cache_dir: Optional[Path] = None
+
+
+def prepare(data_dir: Path, maibot_dir: Path, version_key: str) -> Optional[Path]:
+    """
+    启用预热缓存，应在导入MaiBot模块之前调用
+    version_key 标识应用版本，变化后重新预编译
+    返回本版本的缓存目录，失败时返回None（不影响正常启动）
+    这里在启动路径上，只做文件操作，不导入重型模块
+    """
+    global _jieba_cache_dir
+    try:
+        root = data_dir / CACHE_DIR_NAME
+        version_dir = root / re.sub(r"[^A-Za-z0-9_.-]", "_", version_key)
+        pycache_dir = version_dir / "pycache"
+        pycache_dir.mkdir(parents=True, exist_ok=True)
+        sys.pycache_prefix = str(pycache_dir)
+
+        _remove_stale_versions(root, version_dir)
+        _jieba_cache_dir = root
+        _seed_derived_data(data_dir, maibot_dir)
+
+        if (version_dir / COMPLETE_MARKER).exists():
+            print(f"预热缓存已就绪: {version_dir.name}")
+        else:
+            threading.Thread(
+                target=_precompile,
+                args=(maibot_dir, version_dir),
+                name="warm-cache-compile",
+                daemon=True
+            ).start()
+        return version_dir
+
+    except Exception as e:
+        print(f"启用预热缓存失败: {e}")
+        return None
+
+
+def preload():
+    """在后台线程导入重型模块并加载jieba词典，只执行一次"""
+    global _preload_started
+    with _preload_lock:
+        if _preload_started:
+            return
+        _preload_started = True
+    threading.Thread(target=_preload_modules, name="warm-cache-preload", daemon=True).start()
+
+
+def _remove_stale_versions(root: Path, current: Path):
+    for entry in root.iterdir():
+        if entry.is_dir() and entry != current:
+            shutil.rmtree(entry, ignore_errors=True)
+            print(f"删除旧版本预热缓存: {entry.name}")
+
+
+def _configure_jieba():
+    """jieba默认把前缀词典缓存写到临时目录，改为写到缓存根目录，应用更新后仍可复用"""
+    if _jieba_cache_dir is None:
+        return
+    import jieba
+    jieba.dt.tmp_dir = str(_jieba_cache_dir)
+    jieba.dt.cache_file = JIEBA_CACHE_FILE
+
+
+def _seed_derived_data(data_dir: Path, maibot_dir: Path):
+    for relative in DERIVED_DATA_FILES:
+        target = data_dir / relative
+        source = maibot_dir / relative
+        if target.exists() or not source.exists():
+            continue
+        target.parent.mkdir(parents=True, exist_ok=True)
+        # 先写临时文件再改名，避免中断后留下不完整的文件
+        partial = target.with_name(target.name + ".tmp")
+        shutil.copyfile(source, partial)
+        os.replace(partial, target)
+
+
+def _precompile(maibot_dir: Path, version_dir: Path):
+    start = time.monotonic()
+    try:
+        # 单进程编译，Android上不能使用多进程
+        success = compileall.compile_dir(str(maibot_dir / "src"), quiet=1, workers=1)
+        elapsed = time.monotonic() - start
+        if success:
+            (version_dir / COMPLETE_MARKER).touch()
+            print(f"MaiBot源码预编译完成，耗时 {elapsed:.1f}s")
+        else:
+            print(f"MaiBot源码预编译部分失败，耗时 {elapsed:.1f}s，下次启动重试")
+    except Exception as e:
+        print(f"MaiBot源码预编译失败: {e}")
+
+
+def _preload_modules():
+    total_start = time.monotonic()
+    # 先设置缓存位置，之后无论由谁首次加载词典都会使用持久缓存
+    try:
+        _configure_jieba()
+    except Exception as e:
+        print(f"设置jieba缓存目录失败: {e}")
+
+    for name in PRELOAD_MODULES:
+        start = time.monotonic()
+        try:
+            importlib.import_module(name)
+            print(f"预加载 {name} 耗时 {(time.monotonic() - start) * 1000:.0f}ms")
+        except Exception as e:
+            print(f"预加载 {name} 失败: {e}")
+
+    start = time.monotonic()
+    try:
+        import jieba
+        jieba.initialize()
+        print(f"加载jieba词典耗时 {(time.monotonic() - start) * 1000:.0f}ms")
+    except Exception as e:
+        print(f"加载jieba词典失败: {e}")
+
+    print(f"预加载完成，总耗时 {(time.monotonic() - total_start) * 1000:.0f}ms")
@@ -0,0 +1,77 @@
+package com.maibot.groupchat.network;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncReplyTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void streamOutlivesIdleTimeoutWhileFramesKeepArriving() throws Exception {
+        AsyncReply reply = new AsyncReply(Runnable::run);
+        StringBuilder seen = new StringBuilder();
+        StreamListener listener = reply.watchIdle(scheduler, 300, seen::append);
+
+        // 总时长远超空闲超时，但片段间隔都小于它
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(100);
+            listener.onPartial("x");
+        }
+        reply.complete("done");
+
+        assertEquals("done", reply.future.get(1, TimeUnit.SECONDS));
+        assertEquals("xxxxxxxxxx", seen.toString());
+    }
+
+    @Test
+    public void streamTimesOutWithoutFirstFrame() throws Exception {
+        AsyncReply reply = new AsyncReply(Runnable::run);
+        reply.watchIdle(scheduler, 100, text -> { });
+
+        assertEquals(AsyncReply.TIMEOUT_REPLY, reply.future.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void streamTimesOutWhenFramesStop() throws Exception {
+        AsyncReply reply = new AsyncReply(Runnable::run);
+        StreamListener listener = reply.watchIdle(scheduler, 200, text -> { });
+        Thread.sleep(100);
+        listener.onPartial("x");
+        long stalledAt = System.currentTimeMillis();
+
+        assertEquals(AsyncReply.TIMEOUT_REPLY, reply.future.get(2, TimeUnit.SECONDS));
+        long waited = System.currentTimeMillis() - stalledAt;
+        assertTrue("timed out " + waited + "ms after the last frame", waited >= 190);
+    }
+
+    @Test
+    public void totalDeadlineAppliesToNonStreamedCalls() throws Exception {
+        AsyncReply reply = new AsyncReply(Runnable::run);
+        reply.scheduleTimeout(scheduler, 100);
+
+        assertEquals(AsyncReply.TIMEOUT_REPLY, reply.future.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void firstCompletionWins() throws Exception {
+        AsyncReply reply = new AsyncReply(Runnable::run);
+        reply.scheduleTimeout(scheduler, 100);
+        reply.complete("reply");
+        Thread.sleep(200);
+
+        assertEquals("reply", reply.future.get());
+    }
+}
@@ -0,0 +1,275 @@
+package com.maibot.groupchat.network;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JSON与MessagePack编解码器在典型群聊数据上的往返结果必须完全一致，
+ * 同时MessagePack报文不应比JSON大
+ */
+public class ChatCodecTest {
+
+    private static final int BATCH_BOTS = 5;
+    // 模拟模型逐段输出时每个片段的长度
+    private static final int STREAM_DELTA_CHARS = 8;
+
+    private static final String[] SAMPLE_LINES = {
+            "哈哈哈哈，这也太真实了吧😂",
+            "我觉得你说得对，不过还要看具体情况。",
+            "今天晚上吃什么？要不要一起去楼下那家新开的火锅店？",
+            "刚看完那个视频，\"猫猫被黄瓜吓到\"真的笑死我了！！！",
+            "其实这个问题可以从两个角度来看：第一，成本；第二，时间。\n你更在意哪个？",
+            "收到～我等下把文件发到群里，路径是 C:\\Users\\mai\\docs\\plan.txt",
+            "@小麦 你昨天说的那本书叫什么名字来着？《三体》还是《球状闪电》？",
+            "OK, let's do it! 明天 9:30 在老地方见 👍",
+    };
+
+    private static final List<String> TEXTS = Arrays.asList("", transcript(1), transcript(12), transcript(400));
+
+    @Test
+    public void chatRequestsCarryTheSameFields() throws IOException {
+        for (String text : TEXTS) {
+            Buffer json = new Buffer();
+            JsonChatCodec.INSTANCE.encodeChat(text).writeTo(json);
+            Buffer msgpack = new Buffer();
+            MsgpackChatCodec.INSTANCE.encodeChat(text).writeTo(msgpack);
+            assertEquals(parseJson(json), parseMsgpack(msgpack));
+        }
+    }
+
+    @Test
+    public void batchRequestsCarryTheSameFields() throws IOException {
+        Buffer json = new Buffer();
+        JsonChatCodec.INSTANCE.encodeBatch(transcript(12), botIds()).writeTo(json);
+        Buffer msgpack = new Buffer();
+        MsgpackChatCodec.INSTANCE.encodeBatch(transcript(12), botIds()).writeTo(msgpack);
+        assertEquals(parseJson(json), parseMsgpack(msgpack));
+    }
+
+    @Test
+    public void repliesDecodeIdentically() throws IOException {
+        for (String text : TEXTS) {
+            Buffer json = new Buffer();
+            writeJsonReply(json, text);
+            Buffer msgpack = new Buffer();
+            writeMsgpackReply(msgpack, text);
+
+            assertEquals(text, JsonChatCodec.INSTANCE.decodeReply(json));
+            assertEquals(text, MsgpackChatCodec.INSTANCE.decodeReply(msgpack));
+        }
+    }
+
+    @Test
+    public void batchRepliesDecodeIdentically() throws IOException {
+        Map<String, String> replies = new LinkedHashMap<>();
+        for (String botId : botIds()) {
+            replies.put(botId, transcript(botId.length() * 7));
+        }
+        Buffer json = new Buffer();
+        writeJsonBatch(json, replies);
+        Buffer msgpack = new Buffer();
+        writeMsgpackBatch(msgpack, replies);
+
+        assertEquals(replies, JsonChatCodec.INSTANCE.decodeBatchReplies(json));
+        assertEquals(replies, MsgpackChatCodec.INSTANCE.decodeBatchReplies(msgpack));
+    }
+
+    @Test
+    public void streamFramesDecodeIdentically() throws IOException {
+        String reply = transcript(40);
+        Buffer json = new Buffer();
+        Buffer msgpack = new Buffer();
+        for (int offset = 0; offset < reply.length(); offset += STREAM_DELTA_CHARS) {
+            String delta = reply.substring(offset, Math.min(reply.length(), offset + STREAM_DELTA_CHARS));
+            for (String botId : botIds()) {
+                writeJsonFrame(json, StreamFrame.TYPE_DELTA, botId, "text", delta);
+                writeMsgpackFrame(msgpack, StreamFrame.TYPE_DELTA, botId, "text", delta);
+            }
+        }
+        for (String botId : botIds()) {
+            writeJsonFrame(json, StreamFrame.TYPE_DONE, botId, "reply", reply);
+            writeMsgpackFrame(msgpack, StreamFrame.TYPE_DONE, botId, "reply", reply);
+        }
+        long jsonSize = json.size();
+        long msgpackSize = msgpack.size();
+
+        List<String> jsonFrames = readFrames(JsonChatCodec.INSTANCE.newFrameReader(json));
+        List<String> msgpackFrames = readFrames(MsgpackChatCodec.INSTANCE.newFrameReader(msgpack));
+        assertEquals(jsonFrames, msgpackFrames);
+        assertFalse(jsonFrames.isEmpty());
+        assertTrue("msgpack " + msgpackSize + " > json " + jsonSize, msgpackSize <= jsonSize);
+    }
+
+    @Test
+    public void jsonFramesTolerateBlankLinesAndMissingTrailingNewline() throws IOException {
+        Buffer json = new Buffer().writeUtf8("\n{\"type\":\"delta\",\"bot_id\":\"a\",\"text\":\"你\"}\n\n"
+                + "{\"type\":\"done\",\"bot_id\":\"a\",\"reply\":\"你好\",\"extra\":[1,{}]}");
+        assertEquals(Arrays.asList("delta|a|你|null|null", "done|a|null|你好|null"),
+                readFrames(JsonChatCodec.INSTANCE.newFrameReader(json)));
+    }
+
+    @Test
+    public void missingReplyDecodesAsNull() throws IOException {
+        Buffer json = new Buffer().writeUtf8("{\"success\":false,\"error\":\"x\"}");
+        assertNull(JsonChatCodec.INSTANCE.decodeReply(json));
+
+        Buffer msgpack = new Buffer();
+        MessagePacker packer = MessagePack.newDefaultPacker(msgpack.outputStream());
+        packer.packMapHeader(1);
+        packer.packString("success").packBoolean(false);
+        packer.flush();
+        assertNull(MsgpackChatCodec.INSTANCE.decodeReply(msgpack));
+    }
+
+    @Test(expected = MalformedPayloadException.class)
+    public void malformedJsonIsReportedAsMalformedPayload() throws IOException {
+        JsonChatCodec.INSTANCE.decodeReply(new Buffer().writeUtf8("{\"reply\": [1, 2"));
+    }
+
+    private static List<String> readFrames(ChatCodec.FrameReader reader) throws IOException {
+        List<String> frames = new ArrayList<>();
+        StreamFrame frame = new StreamFrame();
+        while (reader.next(frame)) {
+            frames.add(frame.type + "|" + frame.botId + "|" + frame.text + "|" + frame.reply + "|" + frame.error);
+        }
+        return frames;
+    }
+
+    private static JsonElement parseJson(Buffer buffer) {
+        return JsonParser.parseString(buffer.readUtf8());
+    }
+
+    private static JsonElement parseMsgpack(Buffer buffer) throws IOException {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(buffer.inputStream())) {
+            return JsonParser.parseString(unpacker.unpackValue().toJson());
+        }
+    }
+
+    private static List<String> botIds() {
+        List<String> botIds = new ArrayList<>();
+        for (int i = 0; i < BATCH_BOTS; i++) {
+            botIds.add("Bot " + i);
+        }
+        return botIds;
+    }
+
+    // 用样例句子拼出指定行数的聊天记录
+    private static String transcript(int lines) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            if (i > 0) {
+                builder.append('\n');
+            }
+            builder.append(SAMPLE_LINES[i % SAMPLE_LINES.length]);
+        }
+        return builder.toString();
+    }
+
+    // 以下按 maibot_android.py 中的响应结构编码
+
+    private static void writeJsonReply(Buffer sink, String reply) throws IOException {
+        JsonWriter writer = newJsonWriter(sink);
+        writer.beginObject();
+        writer.name("reply").value(reply);
+        writer.name("success").value(true);
+        writer.name("error").nullValue();
+        writer.endObject();
+        writer.flush();
+    }
+
+    private static void writeJsonBatch(Buffer sink, Map<String, String> replies) throws IOException {
+        JsonWriter writer = newJsonWriter(sink);
+        writer.beginObject();
+        writer.name("replies").beginArray();
+        for (Map.Entry<String, String> entry : replies.entrySet()) {
+            writer.beginObject();
+            writer.name("bot_id").value(entry.getKey());
+            writer.name("reply").value(entry.getValue());
+            writer.name("success").value(true);
+            writer.name("error").nullValue();
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.name("success").value(true);
+        writer.name("error").nullValue();
+        writer.endObject();
+        writer.flush();
+    }
+
+    private static void writeJsonFrame(Buffer sink, String type, String botId, String field, String value)
+            throws IOException {
+        JsonWriter writer = newJsonWriter(sink);
+        writer.beginObject();
+        writer.name("type").value(type);
+        writer.name("bot_id").value(botId);
+        writer.name(field).value(value);
+        writer.endObject();
+        writer.flush();
+        sink.writeByte('\n');
+    }
+
+    private static JsonWriter newJsonWriter(Buffer sink) {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(sink.outputStream(), StandardCharsets.UTF_8));
+        // 与服务端 json.dumps 默认行为一致，不转义HTML字符
+        writer.setHtmlSafe(false);
+        writer.setSerializeNulls(true);
+        return writer;
+    }
+
+    private static void writeMsgpackReply(Buffer sink, String reply) throws IOException {
+        MessagePacker packer = MessagePack.newDefaultPacker(sink.outputStream());
+        packer.packMapHeader(3);
+        packer.packString("reply").packString(reply);
+        packer.packString("success").packBoolean(true);
+        packer.packString("error").packNil();
+        packer.flush();
+    }
+
+    private static void writeMsgpackBatch(Buffer sink, Map<String, String> replies) throws IOException {
+        MessagePacker packer = MessagePack.newDefaultPacker(sink.outputStream());
+        packer.packMapHeader(3);
+        packer.packString("replies").packArrayHeader(replies.size());
+        for (Map.Entry<String, String> entry : replies.entrySet()) {
+            packer.packMapHeader(4);
+            packer.packString("bot_id").packString(entry.getKey());
+            packer.packString("reply").packString(entry.getValue());
+            packer.packString("success").packBoolean(true);
+            packer.packString("error").packNil();
+        }
+        packer.packString("success").packBoolean(true);
+        packer.packString("error").packNil();
+        packer.flush();
+    }
+
+    private static void writeMsgpackFrame(Buffer sink, String type, String botId, String field, String value)
+            throws IOException {
+        MessagePacker packer = MessagePack.newDefaultPacker(sink.outputStream());
+        packer.packMapHeader(3);
+        packer.packString("type").packString(type);
+        packer.packString("bot_id").packString(botId);
+        packer.packString(field).packString(value);
+        packer.flush();
+    }
+}
@@ -0,0 +1,141 @@
+package com.maibot.groupchat.network;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private long now;
+    private final List<CircuitBreaker.State> transitions = new ArrayList<>();
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        now = 1000;
+        breaker = new CircuitBreaker("http://test", (endpoint, state) -> transitions.add(state), () -> now);
+    }
+
+    @Test
+    public void opensAfterConsecutiveServerFailures() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordResult(true);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.recordResult(true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        for (int i = 0; i < 4; i++) {
+            breaker.recordResult(true);
+        }
+        breaker.recordResult(false);
+        for (int i = 0; i < 4; i++) {
+            breaker.recordResult(true);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenAdmitsSingleProbeAfterCooldown() {
+        trip();
+        now += 9999;
+        assertFalse(breaker.allowRequest());
+
+        now += 1;
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void probeSuccessCloses() {
+        trip();
+        now += 10000;
+        assertTrue(breaker.allowRequest());
+        breaker.recordResult(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void probeFailureReopens() {
+        trip();
+        now += 10000;
+        assertTrue(breaker.allowRequest());
+        breaker.recordResult(true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelledProbeAdmitsNextProbe() {
+        trip();
+        now += 10000;
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordCancelled();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        breaker.recordResult(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void healthyChecksRecoverWithoutTraffic() {
+        trip();
+        breaker.recordHealthCheck(true);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // 探测请求被取消前又来了一次健康检查
+        assertTrue(breaker.allowRequest());
+        breaker.recordHealthCheck(true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedHealthCheckOpensImmediately() {
+        breaker.recordHealthCheck(false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        // 已经打开时不重新计时
+        now += 5000;
+        breaker.recordHealthCheck(false);
+        now += 5000;
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void listenerSeesEachTransitionOnce() {
+        trip();
+        breaker.recordHealthCheck(true);
+        breaker.recordHealthCheck(true);
+        breaker.recordHealthCheck(true);
+        assertEquals(3, transitions.size());
+        assertEquals(CircuitBreaker.State.OPEN, transitions.get(0));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, transitions.get(1));
+        assertEquals(CircuitBreaker.State.CLOSED, transitions.get(2));
+    }
+
+    private void trip() {
+        for (int i = 0; i < 5; i++) {
+            breaker.recordResult(true);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,91 @@
+package com.maibot.groupchat.network;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProviderRateLimiterTest {
+
+    private final AtomicReference<String> provider = new AtomicReference<>("DeepSeek");
+    private final AtomicInteger rpm = new AtomicInteger();
+    private final AtomicInteger tpm = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong(1000);
+
+    private final ProviderRateLimiter limiter =
+            new ProviderRateLimiter(provider::get, rpm::get, tpm::get, now::get);
+
+    @Test
+    public void noBudgetMeansNoPacing() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.reserve(5, 100000));
+        }
+    }
+
+    @Test
+    public void burstWithinBucketIsNotDelayed() {
+        // 60 RPM 的桶容纳10秒的突发，一次给5个机器人群发不需要等待
+        rpm.set(60);
+        assertEquals(0, limiter.reserve(5, 0));
+        assertEquals(0, limiter.reserve(5, 0));
+    }
+
+    @Test
+    public void overdraftIsPacedAtTheRefillRate() {
+        rpm.set(60);
+        assertEquals(0, limiter.reserve(10, 0));
+        // 透支1个请求，按每秒1个补充
+        assertEquals(1000, limiter.reserve(1, 0));
+        assertEquals(2000, limiter.reserve(1, 0));
+
+        now.addAndGet(2000);
+        assertEquals(1000, limiter.reserve(1, 0));
+    }
+
+    @Test
+    public void bucketRefillsOverTime() {
+        rpm.set(60);
+        limiter.reserve(10, 0);
+        now.addAndGet(10000);
+        assertEquals(0, limiter.reserve(10, 0));
+        // 补充不超过桶容量
+        now.addAndGet(60000);
+        assertEquals(0, limiter.reserve(10, 0));
+        assertTrue(limiter.reserve(1, 0) > 0);
+    }
+
+    @Test
+    public void tokenBudgetAppliesIndependently() {
+        tpm.set(6000);
+        // 桶容量1000个token
+        assertEquals(0, limiter.reserve(1, 1000));
+        assertEquals(1000, limiter.reserve(1, 100));
+    }
+
+    @Test
+    public void providersHaveSeparateBuckets() {
+        rpm.set(60);
+        limiter.reserve(10, 0);
+        assertTrue(limiter.reserve(1, 0) > 0);
+
+        provider.set("OpenAI");
+        assertEquals(0, limiter.reserve(10, 0));
+    }
+
+    @Test
+    public void changingTheBudgetResetsTheBucket() {
+        rpm.set(60);
+        limiter.reserve(10, 0);
+        assertTrue(limiter.reserve(1, 0) > 0);
+
+        rpm.set(120);
+        assertEquals(0, limiter.reserve(10, 0));
+
+        rpm.set(0);
+        assertEquals(0, limiter.reserve(100, 0));
+    }
+}
@@ -0,0 +1,63 @@
+package com.maibot.groupchat.network;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void onlyConnectFailuresAreRetryable() {
+        assertTrue(RetryPolicy.isRetryable(new ConnectException("refused")));
+        // 超时时服务端可能已经在生成回复
+        assertFalse(RetryPolicy.isRetryable(new SocketTimeoutException("timeout")));
+        assertFalse(RetryPolicy.isRetryable(new InterruptedIOException("cancelled")));
+        assertFalse(RetryPolicy.isRetryable(new IOException("reset")));
+    }
+
+    @Test
+    public void onlyGatewayStatusesAreRetryable() {
+        assertTrue(RetryPolicy.isRetryable(502));
+        assertTrue(RetryPolicy.isRetryable(503));
+        assertTrue(RetryPolicy.isRetryable(504));
+        assertFalse(RetryPolicy.isRetryable(500));
+        assertFalse(RetryPolicy.isRetryable(404));
+        assertFalse(RetryPolicy.isRetryable(429));
+    }
+
+    @Test
+    public void backoffStaysWithinJitterCeiling() {
+        long[] ceilings = {200, 400, 800, 1600, 2000, 2000};
+        for (int attempt = 0; attempt < ceilings.length; attempt++) {
+            for (int i = 0; i < 500; i++) {
+                long delay = RetryPolicy.backoffDelayMs(attempt);
+                assertTrue("attempt " + attempt + " delay " + delay, delay >= 0 && delay < ceilings[attempt]);
+            }
+        }
+    }
+
+    @Test
+    public void backoffDoesNotOverflowForLargeAttempts() {
+        for (int attempt = 10; attempt < 100; attempt++) {
+            long delay = RetryPolicy.backoffDelayMs(attempt);
+            assertTrue(delay >= 0 && delay < 2000);
+        }
+    }
+
+    @Test
+    public void backoffIsJittered() {
+        long first = RetryPolicy.backoffDelayMs(4);
+        for (int i = 0; i < 50; i++) {
+            if (RetryPolicy.backoffDelayMs(4) != first) {
+                return;
+            }
+        }
+        throw new AssertionError("backoff delay never varied");
+    }
+}
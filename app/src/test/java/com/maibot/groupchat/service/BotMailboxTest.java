@@ -0,0 +1,67 @@
+package com.maibot.groupchat.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BotMailboxTest {
+
+    @Test
+    public void queueKeepsOrderUntilFull() {
+        BotMailbox mailbox = new BotMailbox();
+        for (int i = 0; i < BotMailbox.CAPACITY; i++) {
+            assertTrue(mailbox.offer("m" + i, BotMailbox.Policy.QUEUE));
+        }
+        assertFalse(mailbox.offer("overflow", BotMailbox.Policy.QUEUE));
+        assertEquals(BotMailbox.CAPACITY, mailbox.entryCount());
+        for (int i = 0; i < BotMailbox.CAPACITY; i++) {
+            assertEquals("m" + i, mailbox.poll());
+        }
+        assertNull(mailbox.poll());
+    }
+
+    @Test
+    public void coalesceMergesIntoLastEntry() {
+        BotMailbox mailbox = new BotMailbox();
+        assertTrue(mailbox.offer("a", BotMailbox.Policy.COALESCE));
+        assertTrue(mailbox.offer("b", BotMailbox.Policy.COALESCE));
+        assertTrue(mailbox.offer("c", BotMailbox.Policy.COALESCE));
+
+        // 三条消息只会产生一次回复
+        assertEquals(1, mailbox.entryCount());
+        assertEquals(3, mailbox.size());
+        assertEquals("a\nb\nc", mailbox.poll());
+        assertEquals(0, mailbox.size());
+    }
+
+    @Test
+    public void coalesceNeverRejectsOnceNonEmpty() {
+        BotMailbox mailbox = new BotMailbox();
+        for (int i = 0; i < BotMailbox.CAPACITY; i++) {
+            mailbox.offer("m" + i, BotMailbox.Policy.QUEUE);
+        }
+        assertTrue(mailbox.offer("late", BotMailbox.Policy.COALESCE));
+        assertEquals(BotMailbox.CAPACITY, mailbox.entryCount());
+        assertEquals(BotMailbox.CAPACITY + 1, mailbox.size());
+    }
+
+    @Test
+    public void clearDropsEverything() {
+        BotMailbox mailbox = new BotMailbox();
+        mailbox.offer("a", BotMailbox.Policy.QUEUE);
+        mailbox.offer("b", BotMailbox.Policy.QUEUE);
+        mailbox.clear();
+        assertEquals(0, mailbox.entryCount());
+        assertNull(mailbox.poll());
+    }
+
+    @Test
+    public void unknownPolicyFallsBackToLatestWins() {
+        assertEquals(BotMailbox.Policy.COALESCE, BotMailbox.Policy.parse("COALESCE"));
+        assertEquals(BotMailbox.Policy.LATEST_WINS, BotMailbox.Policy.parse("bogus"));
+        assertEquals(BotMailbox.Policy.LATEST_WINS, BotMailbox.Policy.parse(null));
+    }
+}
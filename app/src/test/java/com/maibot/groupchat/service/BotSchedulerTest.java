@@ -0,0 +1,193 @@
+package com.maibot.groupchat.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BotSchedulerTest {
+
+    private BotScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectsNewTasksOverCapacity() throws Exception {
+        scheduler = new BotScheduler(null, 1, 3);
+        CountDownLatch release = blockWorkers(1);
+
+        assertTrue(scheduler.trySubmit("a", () -> { }));
+        assertTrue(scheduler.trySubmit("b", () -> { }));
+        assertTrue(scheduler.trySubmit("a", () -> { }));
+        assertFalse(scheduler.trySubmit("c", () -> { }));
+        assertEquals(3, scheduler.getQueuedCount());
+
+        release.countDown();
+        awaitIdle();
+        assertTrue(scheduler.trySubmit("c", () -> { }));
+    }
+
+    @Test
+    public void callbacksBypassCapacity() throws Exception {
+        scheduler = new BotScheduler(null, 1, 1);
+        CountDownLatch release = blockWorkers(1);
+        assertTrue(scheduler.trySubmit("a", () -> { }));
+        assertFalse(scheduler.trySubmit("a", () -> { }));
+
+        CountDownLatch callback = new CountDownLatch(1);
+        scheduler.executorFor("a").execute(callback::countDown);
+        release.countDown();
+        assertTrue(callback.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void busyKeyDoesNotStarveOthers() throws Exception {
+        scheduler = new BotScheduler(null, 1, 64);
+        CountDownLatch release = blockWorkers(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 1; i <= 5; i++) {
+            String name = "a" + i;
+            scheduler.trySubmit("a", () -> order.add(name));
+        }
+        scheduler.trySubmit("b", () -> order.add("b1"));
+        scheduler.trySubmit("c", () -> order.add("c1"));
+
+        release.countDown();
+        awaitIdle();
+        assertEquals(Arrays.asList("a1", "b1", "c1", "a2", "a3", "a4", "a5"), order);
+    }
+
+    @Test
+    public void tasksOfOneKeyRunInSubmissionOrder() throws Exception {
+        scheduler = new BotScheduler(null, 1, 64);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 20; i++) {
+            int value = i;
+            scheduler.trySubmit(i % 2 == 0 ? "even" : "odd", () -> order.add(value));
+        }
+        awaitIdle();
+        List<Integer> even = new ArrayList<>();
+        List<Integer> odd = new ArrayList<>();
+        for (int value : order) {
+            (value % 2 == 0 ? even : odd).add(value);
+        }
+        assertEquals(Arrays.asList(0, 2, 4, 6, 8, 10, 12, 14, 16, 18), even);
+        assertEquals(Arrays.asList(1, 3, 5, 7, 9, 11, 13, 15, 17, 19), odd);
+    }
+
+    @Test
+    public void tasksOfOneKeyNeverOverlapAcrossWorkers() throws Exception {
+        scheduler = new BotScheduler(null, 4, 1024);
+        int tasks = 200;
+        AtomicInteger running = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            int value = i;
+            // 同一 key 的任务通过 executorFor 和 trySubmit 交替提交
+            Runnable task = () -> {
+                if (running.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                order.add(value);
+                Thread.yield();
+                running.decrementAndGet();
+                done.countDown();
+            };
+            if (i % 2 == 0) {
+                assertTrue(scheduler.trySubmit("outbox", task));
+            } else {
+                scheduler.executorFor("outbox").execute(task);
+            }
+            // 其他 key 的任务占用剩余的工作线程
+            scheduler.trySubmit("other" + (i % 3), Thread::yield);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(overlapped.get());
+        for (int i = 0; i < tasks; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void workersRunTasksConcurrently() throws Exception {
+        scheduler = new BotScheduler(null, 3, 64);
+        CountDownLatch running = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            scheduler.trySubmit("bot" + i, () -> {
+                running.countDown();
+                awaitQuietly(release);
+            });
+        }
+        assertTrue(running.await(2, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void delayedTaskRunsOnItsQueue() throws Exception {
+        scheduler = new BotScheduler(null, 1, 64);
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        scheduler.schedule("a", ran::countDown, 100);
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+    }
+
+    @Test
+    public void rejectsAfterShutdown() {
+        scheduler = new BotScheduler(null, 1, 64);
+        scheduler.shutdown();
+        assertFalse(scheduler.trySubmit("a", () -> { }));
+    }
+
+    // 占住所有工作线程，返回放行用的闩
+    private CountDownLatch blockWorkers(int workers) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(workers);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < workers; i++) {
+            scheduler.executorFor("blocker" + i).execute(() -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+        }
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        // 等队列清空后再排一个标记任务，单线程时它在之前的所有任务之后执行
+        CountDownLatch done = new CountDownLatch(1);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (scheduler.getQueuedCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        scheduler.executorFor("idle-marker").execute(done::countDown);
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
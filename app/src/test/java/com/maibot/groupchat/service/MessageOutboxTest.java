@@ -0,0 +1,150 @@
+package com.maibot.groupchat.service;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 后台任务在调用线程上直接执行，快照保存在内存中
+ */
+public class MessageOutboxTest {
+
+    private final MemoryStorage storage = new MemoryStorage();
+    private final AtomicLong now = new AtomicLong(1000);
+    private final MessageOutbox outbox = newOutbox();
+
+    @Test
+    public void duplicateKeyIsRejectedWhilePending() {
+        assertTrue(outbox.enqueue("k1", "hello"));
+        assertFalse(outbox.enqueue("k1", "hello"));
+        assertEquals(1, outbox.getPendingCount());
+    }
+
+    @Test
+    public void flushDispatchesInOrderExactlyOnce() {
+        outbox.enqueue("k1", "a");
+        outbox.enqueue("k2", "b");
+        List<String> sent = new ArrayList<>();
+        outbox.flush(sent::add);
+        outbox.flush(sent::add);
+
+        assertEquals(Arrays.asList("a", "b"), sent);
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test
+    public void sentKeyIsRejectedAfterFlush() {
+        outbox.enqueue("k1", "a");
+        outbox.flush(message -> { });
+        assertFalse(outbox.enqueue("k1", "a"));
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test
+    public void oldestSentKeysAreForgotten() {
+        outbox.enqueue("first", "a");
+        outbox.flush(message -> { });
+        for (int i = 0; i < MessageOutbox.MAX_SENT_KEYS; i++) {
+            outbox.enqueue("k" + i, "m");
+            outbox.flush(message -> { });
+        }
+        assertTrue(outbox.enqueue("first", "a"));
+        assertFalse(outbox.enqueue("k" + (MessageOutbox.MAX_SENT_KEYS - 1), "m"));
+    }
+
+    @Test
+    public void sentKeyIsPersistedBeforeDispatch() {
+        outbox.enqueue("k1", "a");
+        List<String> snapshotsAtDispatch = new ArrayList<>();
+        outbox.flush(message -> snapshotsAtDispatch.add(storage.snapshot));
+
+        assertEquals(1, snapshotsAtDispatch.size());
+        assertTrue(snapshotsAtDispatch.get(0).contains("\"k1\""));
+        // 重启后不会重放已发出的消息
+        List<String> replayed = new ArrayList<>();
+        newOutbox().flush(replayed::add);
+        assertTrue(replayed.isEmpty());
+    }
+
+    @Test
+    public void failedWriteKeepsMessagesQueued() {
+        outbox.enqueue("k1", "a");
+        storage.failing = true;
+        List<String> sent = new ArrayList<>();
+        outbox.flush(sent::add);
+        assertTrue(sent.isEmpty());
+        assertEquals(1, outbox.getPendingCount());
+        assertFalse(outbox.enqueue("k1", "a"));
+
+        storage.failing = false;
+        outbox.flush(sent::add);
+        assertEquals(Arrays.asList("a"), sent);
+    }
+
+    @Test
+    public void pendingMessagesSurviveRestart() {
+        outbox.enqueue("k1", "a");
+        outbox.enqueue("k2", "b");
+        outbox.flush(message -> { });
+        outbox.enqueue("k3", "c");
+
+        List<String> replayed = new ArrayList<>();
+        newOutbox().flush(replayed::add);
+        assertEquals(Arrays.asList("c"), replayed);
+    }
+
+    @Test
+    public void expireDropsOnlyMessagesPastTheDeadline() {
+        outbox.enqueue("old", "a");
+        now.addAndGet(5000);
+        outbox.enqueue("new", "b");
+        now.addAndGet(1000);
+
+        assertEquals(0, outbox.expire(10000));
+        assertEquals(1, outbox.expire(6000));
+        assertEquals(1, outbox.getPendingCount());
+
+        List<String> sent = new ArrayList<>();
+        outbox.flush(sent::add);
+        assertEquals(Arrays.asList("b"), sent);
+    }
+
+    @Test
+    public void expiredKeyIsNotRememberedAsSent() {
+        outbox.enqueue("k1", "a");
+        now.addAndGet(5000);
+        assertEquals(1, outbox.expire(5000));
+        // 过期的消息没有发出，用户重发时应接受
+        assertTrue(outbox.enqueue("k1", "a"));
+    }
+
+    private MessageOutbox newOutbox() {
+        return new MessageOutbox(storage, Runnable::run, () -> { }, now::get);
+    }
+
+    private static final class MemoryStorage implements MessageOutbox.Storage {
+        String snapshot;
+        boolean failing;
+
+        @Override
+        public String read() {
+            return snapshot;
+        }
+
+        @Override
+        public void write(String snapshot) throws IOException {
+            if (failing) {
+                throw new IOException("disk full");
+            }
+            this.snapshot = snapshot;
+        }
+    }
+}
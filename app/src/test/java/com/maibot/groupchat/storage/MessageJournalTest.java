@@ -0,0 +1,171 @@
+package com.maibot.groupchat.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageJournalTest {
+
+    // 分段头（魔数）和记录头（长度 + CRC32）的字节数
+    private static final int HEADER_SIZE = 4;
+    private static final int FRAME_HEADER_SIZE = 8;
+    // 大于分段大小的十分之一，追加11条即可写满一个分段
+    private static final int LARGE_RECORD = 100 * 1024;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoversRecordsInAppendOrder() throws IOException {
+        File dir = folder.newFolder();
+        MessageJournal journal = new MessageJournal(dir);
+        assertTrue(journal.recover().isEmpty());
+        journal.append(bytes("first"));
+        journal.append(bytes("second"));
+        journal.append(bytes("third"));
+
+        assertEquals(Arrays.asList("first", "second", "third"), strings(new MessageJournal(dir).recover()));
+    }
+
+    @Test
+    public void checksumMismatchTruncatesTheSegment() throws IOException {
+        File dir = folder.newFolder();
+        MessageJournal journal = new MessageJournal(dir);
+        journal.recover();
+        long segmentId = journal.append(bytes("first"));
+        journal.append(bytes("second"));
+        journal.append(bytes("third"));
+
+        // 损坏第二条记录的内容，之后的记录一并丢弃
+        int second = HEADER_SIZE + FRAME_HEADER_SIZE + "first".length();
+        try (RandomAccessFile raf = new RandomAccessFile(segment(dir, segmentId), "rw")) {
+            raf.seek(second + FRAME_HEADER_SIZE);
+            raf.write('X');
+        }
+
+        assertEquals(Arrays.asList("first"), strings(new MessageJournal(dir).recover()));
+    }
+
+    @Test
+    public void tornWriteEndsTheSegment() throws IOException {
+        File dir = folder.newFolder();
+        MessageJournal journal = new MessageJournal(dir);
+        journal.recover();
+        long segmentId = journal.append(bytes("first"));
+        journal.append(bytes("second"));
+
+        // 长度最后写入：写到一半的记录长度仍为 0
+        int second = HEADER_SIZE + FRAME_HEADER_SIZE + "first".length();
+        try (RandomAccessFile raf = new RandomAccessFile(segment(dir, segmentId), "rw")) {
+            raf.seek(second);
+            raf.writeInt(0);
+        }
+
+        assertEquals(Arrays.asList("first"), strings(new MessageJournal(dir).recover()));
+    }
+
+    @Test
+    public void discardRecoveredKeepsSegmentsWrittenAfterRecovery() throws IOException {
+        File dir = folder.newFolder();
+        MessageJournal old = new MessageJournal(dir);
+        old.recover();
+        long oldSegment = old.append(bytes("old"));
+
+        MessageJournal journal = new MessageJournal(dir);
+        assertEquals(Arrays.asList("old"), strings(journal.recover()));
+        long firstLive = journal.append(new byte[LARGE_RECORD]);
+        long last = firstLive;
+        for (int i = 0; i < 11; i++) {
+            last = journal.append(new byte[LARGE_RECORD]);
+        }
+        assertTrue("expected a rollover", last > firstLive);
+
+        journal.discardRecovered();
+        assertFalse(segment(dir, oldSegment).exists());
+        assertTrue(segment(dir, firstLive).exists());
+        assertTrue(segment(dir, last).exists());
+    }
+
+    @Test
+    public void markCommittedDeletesEarlierSegments() throws Exception {
+        File dir = folder.newFolder();
+        MessageJournal journal = new MessageJournal(dir);
+        journal.recover();
+        long first = journal.append(new byte[LARGE_RECORD]);
+        long last = first;
+        for (int i = 0; i < 11; i++) {
+            last = journal.append(new byte[LARGE_RECORD]);
+        }
+        assertTrue("expected a rollover", last > first);
+
+        journal.markCommitted(last);
+        // 删除在日志的后台线程上进行
+        File firstFile = segment(dir, first);
+        for (int i = 0; i < 100 && firstFile.exists(); i++) {
+            Thread.sleep(20);
+        }
+        assertFalse(firstFile.exists());
+        assertTrue(segment(dir, last).exists());
+    }
+
+    @Test
+    public void missingSpareSkipsRecordsUntilTheNextSegmentIsReady() throws Exception {
+        File dir = folder.newFolder();
+        MessageJournal journal = new MessageJournal(dir);
+        journal.recover();
+        // 连续写满多个分段，后台来不及准备备用分段时本条记录不写日志，之后恢复写入
+        int journaled = 0;
+        for (int i = 0; i < 40; i++) {
+            if (journal.append(new byte[LARGE_RECORD]) >= 0) {
+                journaled++;
+            }
+        }
+        long segmentId = -1;
+        for (int i = 0; i < 100 && segmentId < 0; i++) {
+            segmentId = journal.append(new byte[LARGE_RECORD]);
+            if (segmentId < 0) {
+                Thread.sleep(20);
+            }
+        }
+        assertTrue(segmentId >= 0);
+        journaled++;
+
+        assertEquals(journaled, new MessageJournal(dir).recover().size());
+    }
+
+    @Test
+    public void oversizedRecordIsNotJournaled() throws IOException {
+        MessageJournal journal = new MessageJournal(folder.newFolder());
+        journal.recover();
+        assertEquals(-1, journal.append(new byte[2 * 1024 * 1024]));
+    }
+
+    private static File segment(File dir, long id) {
+        return new File(dir, String.format(Locale.US, "journal-%016d.seg", id));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(List<byte[]> records) {
+        List<String> values = new ArrayList<>();
+        for (byte[] record : records) {
+            values.add(new String(record, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+}